@@ -0,0 +1,1024 @@
+/**
+ * @file Benchmark.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains throughput benchmarks for the 2048 model
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @brief Command line benchmarks for the game model and the modules built on it
+ * @details Run with "java Benchmark <name>", or with no name to run all of them.
+ * Each benchmark warms up first, then reports the best of several timed rounds.
+ */
+public class Benchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		String name = args.length > 0 ? args[0] : "all";
+		boolean all = name.equals("all");
+		boolean ran = false;
+
+		if (all || name.equals("rules")) {
+			rules();
+			ran = true;
+		}
+
+		if (all || name.equals("eval")) {
+			eval();
+			ran = true;
+		}
+
+		if (all || name.equals("search")) {
+			search();
+			ran = true;
+		}
+
+		if (all || name.equals("tablebase")) {
+			tablebase();
+			ran = true;
+		}
+
+		if (all || name.equals("ntuple")) {
+			ntuple();
+			ran = true;
+		}
+
+		if (all || name.equals("tiled")) {
+			tiled();
+			ran = true;
+		}
+
+		if (all || name.equals("sparse")) {
+			sparse();
+			ran = true;
+		}
+
+		if (all || name.equals("leaderboard")) {
+			leaderboard();
+			ran = true;
+		}
+
+		if (all || name.equals("stats")) {
+			stats();
+			ran = true;
+		}
+
+		if (all || name.equals("book")) {
+			book();
+			ran = true;
+		}
+
+		if (all || name.equals("memory")) {
+			memory();
+			ran = true;
+		}
+
+		if (all || name.equals("replay")) {
+			replay();
+			ran = true;
+		}
+
+		if (all || name.equals("successors")) {
+			successors();
+			ran = true;
+		}
+
+		if (all || name.equals("verify")) {
+			verify();
+			ran = true;
+		}
+
+		if (!ran) {
+			System.err.println("Unknown benchmark: " + name);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @brief Moves per second through GameBoard for each rule variant
+	 * @details Plays the same seeded random games under each variant. The
+	 * "hardcoded" row is a baseline that does not go through Rules at all:
+	 * a loop of its own on a 4x4 board, with the winning tile and the chance
+	 * of a 4 written in as constants. It plays exactly the games of the
+	 * "standard" row, which is checked before timing.
+	 */
+	static void rules() {
+		System.out.println("== rules: random games through GameBoard, 4x4 ==");
+		Rules[] variants = {
+			Rules.STANDARD,
+			new Rules(4096, false, 0.1),
+			new Rules(8192, false, 0.1),
+			new Rules(2048, true, 0.1),
+			new Rules(2048, false, 0.25)
+		};
+		String[] names = {"standard", "target 4096", "target 8192", "keep playing", "25% fours"};
+
+		if (playHardcodedGames(200) != playRandomGames(Rules.STANDARD, 200)) {
+			throw new IllegalStateException("The hardcoded baseline plays different games to GameBoard");
+		}
+		double base = bestOf(() -> playHardcodedGames(2000));
+		report("hardcoded 2048, 10% fours", base, "moves/s");
+		for (int i=0; i<variants.length; i++) {
+			Rules r = variants[i];
+			double rate = bestOf(() -> playRandomGames(r, 2000));
+			report(names[i], rate, String.format("moves/s (%.2fx hardcoded)", rate / base));
+		}
+	}
+
+	/**
+	 * @brief Evaluations per second, table lookups against walking int[][]
+	 */
+	static void eval() {
+		System.out.println("== eval: board evaluation ==");
+		Random rand = new Random(1);
+		int n = 4096;
+		long[] packed = new long[n];
+		int[][][] boards = new int[n][][];
+		for (int i=0; i<n; i++) {
+			boards[i] = randomBoard(rand, 4, 4);
+			packed[i] = BitBoard.pack(boards[i]);
+		}
+		Evaluator ev = Evaluator.DEFAULT;
+
+		report("4x4 table (8 lookups)", bestOf(() -> {
+			float sink = 0;
+			for (int k=0; k<200; k++) {
+				for (long b : packed) {
+					sink += ev.evaluate(b);
+				}
+			}
+			consume(sink);
+			return 200L * n;
+		}), "evals/s");
+		report("4x4 naive int[][]", bestOf(() -> {
+			float sink = 0;
+			for (int[][] b : boards) {
+				sink += ev.evaluateLines(b);
+			}
+			consume(sink);
+			return n;
+		}), "evals/s");
+
+		int[][][] large = new int[64][][];
+		for (int i=0; i<large.length; i++) {
+			large[i] = randomBoard(rand, 16, 16);
+		}
+		report("16x16 line by line", bestOf(() -> {
+			float sink = 0;
+			for (int[][] b : large) {
+				sink += ev.evaluate(b);
+			}
+			consume(sink);
+			return large.length;
+		}), "evals/s");
+	}
+
+	/**
+	 * @brief Speedup of expectimax from 1 to 64 threads at a fixed depth
+	 * @details Searches the same positions, taken from a seeded game, on
+	 * pools of increasing size. Speedup is relative to a single thread, so
+	 * it is limited by the number of cores on the machine.
+	 */
+	static void search() {
+		int depth = 5;
+		System.out.println("== search: expectimax at depth " + depth + ", "
+				+ Runtime.getRuntime().availableProcessors() + " cores ==");
+		long[] positions = samplePositions(8);
+		double base = 0;
+		for (int threads=1; threads<=64; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			Expectimax search = new Expectimax(Evaluator.DEFAULT, Rules.STANDARD, pool);
+			double rate = bestOf(() -> {
+				int sink = 0;
+				for (long p : positions) {
+					sink += search.bestMove(p, depth);
+				}
+				consume(sink);
+				return positions.length;
+			});
+			pool.shutdown();
+			if (threads == 1) {
+				base = rate;
+			}
+			System.out.printf("  %2d threads %,12.1f searches/s   speedup %.2fx%n", threads, rate, rate / base);
+		}
+	}
+
+	/**
+	 * @brief Build time, file size and probe latency of the cap 2 tablebase
+	 * @details Builds into a temporary file, which is deleted afterwards
+	 */
+	static void tablebase() {
+		System.out.println("== tablebase: boards of 2s and 4s, value of reaching 8 ==");
+		try {
+			Path file = Files.createTempFile("tablebase", ".tb");
+			Files.delete(file);
+			long start = System.nanoTime();
+			Tablebase tb = Tablebase.build(file, 2, Rules.STANDARD,
+					Runtime.getRuntime().availableProcessors());
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.printf("  built %,d entries in %.1f s, %,d bytes%n", tb.size(), secs, Files.size(file));
+
+			// random boards of 0s, 2s and 4s
+			Random rand = new Random(1);
+			long[] boards = new long[1 << 16];
+			for (int i=0; i<boards.length; i++) {
+				for (int c=0; c<16; c++) {
+					boards[i] |= (long) rand.nextInt(3) << (4*c);
+				}
+			}
+			double rate = bestOf(() -> {
+				float sink = 0;
+				for (int k=0; k<16; k++) {
+					for (long b : boards) {
+						sink += tb.probe(b);
+					}
+				}
+				consume(sink);
+				return 16L * boards.length;
+			});
+			report("probe", rate, "probes/s");
+			System.out.printf("  probe latency %.1f ns%n", 1e9 / rate);
+			tb.close();
+			Files.delete(file);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @brief Training games per second of the small n-tuple network
+	 * @details Every thread count trains a fresh network, warmed up by one
+	 * round of training, for the same number of games per thread. Games grow
+	 * longer as the network learns, so rates are only comparable within a run.
+	 */
+	static void ntuple() {
+		System.out.println("== ntuple: Hogwild TD training, small network, "
+				+ Runtime.getRuntime().availableProcessors() + " cores ==");
+		int games = 300;
+		for (int threads=1; threads<=8; threads *= 2) {
+			NTupleNetwork net = NTupleNetwork.small();
+			net.trainParallel(threads, games, 0.1f, 1); // warm up
+			long start = System.nanoTime();
+			net.trainParallel(threads, games, 0.1f, 2);
+			double secs = (System.nanoTime() - start) / 1e9;
+			double rate = threads * games / secs;
+			System.out.printf("  %d threads %,10.0f games/s total %,10.0f games/s per thread%n",
+					threads, rate, rate / threads);
+		}
+	}
+
+	/**
+	 * @brief Cells moved per second on large boards, int[][] against TiledBoard
+	 * @details Each round moves the same board there and back, vertically or
+	 * horizontally. The "turning" rows alternate a vertical and a horizontal
+	 * move, so every move of the tiled board pays for a transpose. The int[][] rows slide each line with GameBoard.slideLine,
+	 * gathering columns cell by cell for vertical moves.
+	 */
+	static void tiled() {
+		System.out.println("== tiled: vertical and horizontal moves on large boards ==");
+		Random rand = new Random(1);
+		for (int n=128; n<=4096; n *= 2) {
+			int[][] b = randomBoard(rand, n, n);
+			TiledBoard t = new TiledBoard(b);
+			int[] line = new int[n];
+			long cells = 2L * n * n;
+			System.out.println("  " + n + "x" + n);
+			report("int[][] horizontal", bestOf(() -> {
+				consume(slideArray(b, BitBoard.LEFT, line) + slideArray(b, BitBoard.RIGHT, line));
+				return cells;
+			}), "cells/s");
+			report("int[][] vertical", bestOf(() -> {
+				consume(slideArray(b, BitBoard.UP, line) + slideArray(b, BitBoard.DOWN, line));
+				return cells;
+			}), "cells/s");
+			report("tiled horizontal", bestOf(() -> {
+				consume(t.move(BitBoard.LEFT) + t.move(BitBoard.RIGHT));
+				return cells;
+			}), "cells/s");
+			report("tiled vertical", bestOf(() -> {
+				consume(t.move(BitBoard.UP) + t.move(BitBoard.DOWN));
+				return cells;
+			}), "cells/s");
+			report("tiled turning", bestOf(() -> {
+				consume(t.move(BitBoard.UP) + t.move(BitBoard.LEFT));
+				return cells;
+			}), "cells/s");
+		}
+	}
+
+	/**
+	 * @brief Moves and spawns per second on mostly empty large boards
+	 * @details Each round moves the board up, left, down and right. GameBoard
+	 * is the reference on int[][], and the tiled and sparse boards start from
+	 * the same cells. Spawns are measured on a sparse board and on one that
+	 * has switched to dense storage, removing each new tile again.
+	 */
+	static void sparse() {
+		System.out.println("== sparse: mostly empty large boards ==");
+		int[] dirs = {BitBoard.UP, BitBoard.LEFT, BitBoard.DOWN, BitBoard.RIGHT};
+		for (int n=1024; n<=4096; n *= 4) {
+			for (int count=16; count<=4096; count *= 16) {
+				Random rand = new Random(count);
+				int[][] b = new int[n][n];
+				for (int k=0; k<count; k++) {
+					b[rand.nextInt(n)][rand.nextInt(n)] = 1 << (1 + rand.nextInt(3));
+				}
+				TiledBoard t = new TiledBoard(b);
+				SparseBoard sp = new SparseBoard(b, SparseBoard.DEFAULT_THRESHOLD);
+				System.out.println("  " + n + "x" + n + ", " + count + " tiles");
+				report("GameBoard int[][]", bestOf(() -> {
+					consume(GameBoard.shiftUp(b) + GameBoard.shiftLeft(b)
+							+ GameBoard.shiftDown(b) + GameBoard.shiftRight(b));
+					return dirs.length;
+				}), "moves/s");
+				report("tiled", bestOf(() -> {
+					long sink = 0;
+					for (int dir : dirs) {
+						sink += t.move(dir);
+					}
+					consume(sink);
+					return dirs.length;
+				}), "moves/s");
+				report("sparse", bestOf(() -> {
+					long sink = 0;
+					for (int k=0; k<16; k++) {
+						for (int dir : dirs) {
+							sink += sp.move(dir);
+						}
+					}
+					consume(sink);
+					return 16L * dirs.length;
+				}), "moves/s");
+			}
+		}
+
+		int n = 4096;
+		SparseBoard sp = new SparseBoard(n, n);
+		SparseBoard dense = new SparseBoard(n, n, 1e-9);
+		Random rand = new Random(1);
+		for (int k=0; k<256; k++) {
+			int r = rand.nextInt(n), c = rand.nextInt(n);
+			sp.set(r, c, 2);
+			dense.set(r, c, 2);
+		}
+		System.out.println("  " + n + "x" + n + ", 256 tiles");
+		report("sparse spawn", bestOf(() -> spawnAndClear(sp, rand, 1000)), "spawns/s");
+		report("dense spawn", bestOf(() -> spawnAndClear(dense, rand, 4)), "spawns/s");
+	}
+
+	/**
+	 * @brief Heap taken by a 1024x1024 board, and moves per second on it
+	 * @details Compares an int[][] of tile values with GameBoard, which keeps
+	 * a byte exponent per cell. Heap use is measured after a collection, so
+	 * it includes the array headers of every row.
+	 */
+	static void memory() {
+		System.out.println("== memory: 1024x1024 board ==");
+		int n = 1024;
+		long base = usedHeap();
+		int[][] ints = new int[n][n];
+		report("int[][]", (usedHeap() - base) / 1024.0, "KB");
+		base = usedHeap();
+		GameBoard.setSeed(1);
+		GameBoard.init(n, n);
+		report("GameBoard (byte exponents)", (usedHeap() - base) / 1024.0, "KB");
+		consume(ints[n-1][n-1]);
+
+		Random rand = new Random(1);
+		for (int k=0; k<n*n/4; k++) {
+			ints[rand.nextInt(n)][rand.nextInt(n)] = 1 << (1 + rand.nextInt(3));
+		}
+		GameBoard.init(ints);
+		int[][] b = ints;
+		report("int[][] moves", bestOf(() -> {
+			consume(GameBoard.shiftUp(b) + GameBoard.shiftLeft(b)
+					+ GameBoard.shiftDown(b) + GameBoard.shiftRight(b));
+			return 4;
+		}), "moves/s");
+		report("GameBoard moves", bestOf(() -> {
+			GameBoard.shiftUp();
+			GameBoard.shiftLeft();
+			GameBoard.shiftDown();
+			GameBoard.shiftRight();
+			consume(GameBoard.getScore());
+			return 4;
+		}), "moves/s");
+	}
+
+	// bytes of heap in use once garbage has been collected
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i=0; i<3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	// spawns tiles and removes each one again, so the board keeps its occupancy
+	private static long spawnAndClear(SparseBoard b, Random rand, int times) {
+		for (int k=0; k<times; k++) {
+			int cell = b.spawn(rand, 0.1);
+			b.set(cell / b.getCols(), cell % b.getCols(), 0);
+		}
+		return times;
+	}
+
+	/**
+	 * @brief Submissions per second to a shared leaderboard from 1 to 8 threads
+	 * @details Every thread submits the same number of scores, drawn so that
+	 * most of them are far from the top 100. Rates are totals across threads.
+	 */
+	static void leaderboard() {
+		System.out.println("== leaderboard: concurrent submissions, top 100, "
+				+ Runtime.getRuntime().availableProcessors() + " cores ==");
+		int perThread = 1_000_000;
+		for (int threads=1; threads<=8; threads *= 2) {
+			int n = threads;
+			double rate = bestOf(() -> {
+				Leaderboard lb = new Leaderboard(100);
+				Thread[] workers = new Thread[n];
+				for (int t=0; t<n; t++) {
+					long seed = t;
+					workers[t] = new Thread(() -> {
+						SplittableRandom rand = new SplittableRandom(seed);
+						for (int i=0; i<perThread; i++) {
+							// roughly the spread of final scores in real games
+							lb.submit((long) (-20000 * Math.log(1 - rand.nextDouble())));
+						}
+					});
+					workers[t].start();
+				}
+				for (Thread w : workers) {
+					try {
+						w.join();
+					}
+					catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+				consume(lb.count());
+				return (long) n * perThread;
+			});
+			report(threads + " threads", rate, "submits/s");
+		}
+
+		Leaderboard lb = new Leaderboard(100);
+		SplittableRandom rand = new SplittableRandom(1);
+		for (int i=0; i<perThread; i++) {
+			lb.submit((long) (-20000 * Math.log(1 - rand.nextDouble())));
+		}
+		report("rank query", bestOf(() -> {
+			long sink = 0;
+			for (int i=0; i<1000; i++) {
+				sink += lb.rank(i * 100);
+			}
+			consume(sink);
+			return 1000;
+		}), "queries/s");
+	}
+
+	/**
+	 * @brief Cost of feeding GameStats from a move loop, and of merging them
+	 * @details Plays the same seeded random games on packed boards with and
+	 * without recording every move and game
+	 */
+	static void stats() {
+		System.out.println("== stats: recording random games on packed boards ==");
+		report("without stats", bestOf(() -> playPacked(null, 2000)), "moves/s");
+		report("with stats", bestOf(() -> playPacked(new GameStats(), 2000)), "moves/s");
+
+		GameStats[] parts = new GameStats[64];
+		for (int i=0; i<parts.length; i++) {
+			parts[i] = new GameStats();
+			playPacked(parts[i], 10);
+		}
+		report("merge", bestOf(() -> {
+			GameStats total = new GameStats();
+			for (GameStats p : parts) {
+				total.merge(p);
+			}
+			consume(total.games());
+			return parts.length;
+		}), "merges/s");
+	}
+
+	// plays seeded random games on packed boards, returning moves made
+	private static long playPacked(GameStats stats, int games) {
+		SplittableRandom rand = new SplittableRandom(1);
+		long count = 0;
+		for (int g=0; g<games; g++) {
+			long b = BitBoard.spawn(BitBoard.spawn(0, rand, 0.1), rand, 0.1);
+			long score = 0;
+			int moves = 0;
+			while (BitBoard.canMove(b)) {
+				int dir = rand.nextInt(4);
+				long next = BitBoard.move(b, dir);
+				if (next == b) {
+					continue;
+				}
+				score += BitBoard.moveScore(b, dir);
+				b = BitBoard.spawn(next, rand, 0.1);
+				moves++;
+				if (stats != null) {
+					stats.recordMove(moves, BitBoard.countEmpty(b));
+				}
+			}
+			if (stats != null) {
+				stats.recordGame(score, moves, 1 << BitBoard.maxExponent(b));
+			}
+			count += moves;
+		}
+		return count;
+	}
+
+	/**
+	 * @brief Hit rate of an opening book, and the search time it saves
+	 * @details Builds a book searched at depth 3 into a temporary file, which is
+	 * deleted afterwards, then plays the first 16 moves of seeded games with
+	 * the book and a depth 3 search for misses, against the search alone.
+	 */
+	static void book() {
+		int depth = 3, plies = 12, moves = 16, games = 100;
+		System.out.println("== book: " + plies + " moves searched at depth " + depth + " ==");
+		try {
+			Path file = Files.createTempFile("book", ".bin");
+			long start = System.nanoTime();
+			OpeningBook.build(file, plies, depth, 1e-4, Rules.STANDARD, 1);
+			OpeningBook book = OpeningBook.open(file);
+			System.out.printf("  built %,d positions in %.1f s%n", book.size(), (System.nanoTime() - start) / 1e9);
+
+			ForkJoinPool pool = new ForkJoinPool(1);
+			Expectimax search = new Expectimax(Evaluator.DEFAULT, Rules.STANDARD, pool);
+			long[] hits = new long[moves];
+			long[] timings = new long[2];
+			for (int withBook=0; withBook<2; withBook++) {
+				for (int g=0; g<games; g++) {
+					SplittableRandom rand = new SplittableRandom(g);
+					long b = BitBoard.spawn(BitBoard.spawn(0, rand, 0.1), rand, 0.1);
+					for (int m=0; m<moves; m++) {
+						long t0 = System.nanoTime();
+						int dir = withBook == 1 ? book.lookup(b) : -1;
+						if (dir >= 0) {
+							hits[m]++;
+						}
+						else {
+							dir = search.bestMove(b, depth);
+						}
+						timings[withBook] += System.nanoTime() - t0;
+						if (dir < 0) {
+							break;
+						}
+						b = BitBoard.spawn(BitBoard.move(b, dir), rand, 0.1);
+					}
+				}
+			}
+			pool.shutdown();
+			StringBuilder sb = new StringBuilder("  hit rate by move:");
+			long total = 0;
+			for (int m=0; m<moves; m++) {
+				sb.append(String.format(" %.0f%%", 100.0 * hits[m] / games));
+				total += hits[m];
+			}
+			System.out.println(sb);
+			System.out.printf("  first %d moves: %.0f%% hits, %.2f ms per move with the book, %.2f ms without%n",
+					moves, 100.0 * total / (games * moves),
+					timings[1] / 1e6 / (games * moves), timings[0] / 1e6 / (games * moves));
+
+			long early = BitBoard.spawn(BitBoard.spawn(0, new SplittableRandom(1), 0.1), new SplittableRandom(2), 0.1);
+			double rate = bestOf(() -> {
+				int sink = 0;
+				for (int i=0; i<100_000; i++) {
+					sink += book.lookup(early + i % 3);
+				}
+				consume(sink);
+				return 100_000;
+			});
+			System.out.printf("  lookup latency %.0f ns%n", 1e9 / rate);
+			book.close();
+			Files.delete(file);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @brief Seek latency and file size of a long recorded game for several
+	 * keyframe intervals
+	 * @details The same seeded random game is recorded with each interval.
+	 * The overhead is the size of the keyframes and index next to the 4 bytes
+	 * each move takes. The last row has a single keyframe at the start, which
+	 * is the same as playing the game again from move 0. Seeks are timed
+	 * once after a warm up seek, since the slow ones take too long to repeat.
+	 */
+	static void replay() {
+		int n = 64, length = 100_000;
+		System.out.println("== replay: seeking in a " + length + " move game on a " + n + "x" + n + " board ==");
+		int[] intervals = {256, 4096, 65536, Integer.MAX_VALUE};
+		try {
+			for (int interval : intervals) {
+				Path file = Files.createTempFile("replay", ".rp");
+				long moves = recordRandomGame(file, n, length, interval);
+				long size = Files.size(file);
+				Replay r = Replay.open(file);
+				// the same random moves for every interval, fewer when each seek is slow
+				Random rand = new Random(1);
+				int seeks = interval > 4096 ? 4 : 20;
+				r.seek(moves / 2);
+				long start = System.nanoTime();
+				for (int i=0; i<seeks; i++) {
+					r.seek((long) (rand.nextDouble() * moves));
+				}
+				double ms = (System.nanoTime() - start) / 1e6 / seeks;
+				consume(GameBoard.getScore());
+				String name = interval == Integer.MAX_VALUE ? "no keyframes" : "every " + interval;
+				System.out.printf("  %-16s %,10d KB, %6.1f%% overhead, %,10.2f ms per seek%n", name,
+						size / 1024, 100.0 * (size - 4 * moves) / (4 * moves), ms);
+				r.close();
+				Files.delete(file);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// records a seeded game of random moves, returning the number of moves made
+	private static long recordRandomGame(Path file, int n, int length, int interval) throws IOException {
+		Rules rules = new Rules(2048, true, 0.1);
+		Random moves = new Random(1);
+		GameBoard.setSeed(1);
+		GameBoard.init(n, n, rules);
+		try (Replay.Recorder rec = new Replay.Recorder(file, n, n, interval, rules)) {
+			while (rec.moves() < length && GameBoard.getStatus()) {
+				int dir = moves.nextInt(4);
+				switch (dir) {
+					case BitBoard.UP: GameBoard.shiftUp(); break;
+					case BitBoard.DOWN: GameBoard.shiftDown(); break;
+					case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				if (GameBoard.hasMoved()) {
+					rec.move(dir, GameBoard.addRandomTile());
+					GameBoard.checkGameOver();
+				}
+			}
+			return rec.moves();
+		}
+	}
+
+	/**
+	 * @brief Games and moves per second checked by Verifier, by number of threads
+	 * @details A batch of random 4x4 games is written once, with every 100th
+	 * claim tampered with, and each row checks the whole batch, so it
+	 * includes mapping and indexing the file.
+	 */
+	static void verify() {
+		int games = 50_000;
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println("== verify: " + games + " random 4x4 games on " + cores + " cores ==");
+		try {
+			Path file = Files.createTempFile("batch", ".vb");
+			Verifier.writeRandomGames(file, games, 4, 1, 100);
+			for (int threads=1; ; threads=Math.min(2 * threads, cores)) {
+				Verifier v = new Verifier(threads);
+				v.verify(file);
+				double best = 0;
+				for (int i=0; i<ROUNDS; i++) {
+					v.verify(file);
+					best = Math.max(best, v.games() / v.seconds());
+				}
+				report(threads + " threads, games", best, "games/s");
+				report(threads + " threads, moves", best * v.moves() / v.games(), "moves/s");
+				System.out.printf("  %,d of %,d games rejected%n", v.rejected().length, v.games());
+				if (threads == cores) {
+					break;
+				}
+			}
+			Files.delete(file);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @brief All four moves of a board, one at a time against in one pass
+	 * @details For BitBoard, one at a time is move and moveScore for each
+	 * direction. For GameBoard it is what a search did before successors:
+	 * restore the saved board, then shift, for each direction.
+	 */
+	static void successors() {
+		System.out.println("== successors: all four moves of a board ==");
+		Random rand = new Random(1);
+		long[] boards = new long[4096];
+		for (int i=0; i<boards.length; i++) {
+			for (int c=0; c<16; c++) {
+				if (rand.nextInt(3) > 0) {
+					boards[i] |= (long) (1 + rand.nextInt(10)) << (4*c);
+				}
+			}
+		}
+		long[] next = new long[4];
+		int[] scores = new int[4];
+		int passes = 64;
+		report("bitboard one at a time", bestOf(() -> {
+			long sink = 0;
+			for (int k=0; k<passes; k++) {
+				for (long b : boards) {
+					for (int dir=0; dir<4; dir++) {
+						sink += BitBoard.move(b, dir) + BitBoard.moveScore(b, dir);
+					}
+				}
+			}
+			consume(sink);
+			return (long) passes * boards.length;
+		}), "boards/s");
+		report("bitboard successors", bestOf(() -> {
+			long sink = 0;
+			for (int k=0; k<passes; k++) {
+				for (long b : boards) {
+					sink += BitBoard.successors(b, next, scores);
+					sink += next[0] + next[1] + next[2] + next[3] + scores[0] + scores[1] + scores[2] + scores[3];
+				}
+			}
+			consume(sink);
+			return (long) passes * boards.length;
+		}), "boards/s");
+
+		Rules rules = new Rules(2048, true, 0.1);
+		for (int n : new int[]{4, 64}) {
+			int[][] b = new int[n][n];
+			for (int i=0; i<n; i++) {
+				for (int j=0; j<n; j++) {
+					b[i][j] = rand.nextInt(3) > 0 ? 1 << (1 + rand.nextInt(10)) : 0;
+				}
+			}
+			GameBoard.init(b, rules);
+			byte[] saved = new byte[n*n];
+			GameBoard.copyExponents(saved);
+			byte[][] cells = new byte[4][n*n];
+			long[] gains = new long[4];
+			int times = (1 << 22) / (n*n);
+			report("gameboard " + n + "x" + n + " one at a time", bestOf(() -> {
+				long sink = 0;
+				for (int k=0; k<times; k++) {
+					for (int dir=0; dir<4; dir++) {
+						GameBoard.init(saved, n, n, 0, rules);
+						switch (dir) {
+							case BitBoard.UP: GameBoard.shiftUp(); break;
+							case BitBoard.DOWN: GameBoard.shiftDown(); break;
+							case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+							default: GameBoard.shiftRight(); break;
+						}
+						sink += GameBoard.getScore();
+					}
+				}
+				consume(sink);
+				return times;
+			}), "boards/s");
+			GameBoard.init(saved, n, n, 0, rules);
+			report("gameboard " + n + "x" + n + " successors", bestOf(() -> {
+				long sink = 0;
+				for (int k=0; k<times; k++) {
+					sink += GameBoard.successors(cells, gains) + gains[0] + gains[3];
+				}
+				consume(sink);
+				return times;
+			}), "boards/s");
+		}
+	}
+
+	// moves a row major board line by line, toward index 0 of each line after reversing if needed
+	private static long slideArray(int[][] b, int dir, int[] line) {
+		int rows = b.length, cols = b[0].length;
+		boolean vertical = dir == BitBoard.UP || dir == BitBoard.DOWN;
+		boolean reverse = dir == BitBoard.DOWN || dir == BitBoard.RIGHT;
+		int lines = vertical ? cols : rows;
+		int len = vertical ? rows : cols;
+		long gained = 0;
+		for (int k=0; k<lines; k++) {
+			for (int i=0; i<len; i++) {
+				int j = reverse ? len-1-i : i;
+				line[i] = vertical ? b[j][k] : b[k][j];
+			}
+			gained += GameBoard.slideLine(line, len);
+			for (int i=0; i<len; i++) {
+				int j = reverse ? len-1-i : i;
+				if (vertical) {
+					b[j][k] = line[i];
+				}
+				else {
+					b[k][j] = line[i];
+				}
+			}
+		}
+		return gained;
+	}
+
+	// packed boards reached by a seeded game played with a one ply search
+	static long[] samplePositions(int n) {
+		long[] positions = new long[n];
+		Random rand = new Random(7);
+		Expectimax oneply = new Expectimax(Evaluator.DEFAULT);
+		long b = 0;
+		int k = 0;
+		for (int move=0; k<n; move++) {
+			b = BitBoard.spawn(b, rand, 0.1);
+			if (move % 20 == 19) {
+				positions[k++] = b;
+			}
+			int dir = oneply.bestMove(b, 1);
+			if (dir < 0) {
+				b = 0; // game over, start again
+				continue;
+			}
+			b = BitBoard.move(b, dir);
+		}
+		return positions;
+	}
+
+	// a board with roughly half its cells holding tiles from 2 to 2048
+	static int[][] randomBoard(Random rand, int rows, int cols) {
+		int[][] b = new int[rows][cols];
+		for (int i=0; i<rows; i++) {
+			for (int j=0; j<cols; j++) {
+				b[i][j] = rand.nextBoolean() ? 0 : 1 << (1 + rand.nextInt(11));
+			}
+		}
+		return b;
+	}
+
+	// keeps a result alive so the JIT cannot remove the work that produced it
+	static volatile double blackhole;
+
+	static void consume(double v) {
+		blackhole = v;
+	}
+
+	// plays seeded random games through the GameBoard API, returning moves made
+	private static long playRandomGames(Rules rules, int games) {
+		Random moves = new Random(1);
+		GameBoard.setSeed(1);
+		long count = 0;
+		for (int g=0; g<games; g++) {
+			GameBoard.init(4, 4, rules);
+			while (GameBoard.getStatus()) {
+				switch (moves.nextInt(4)) {
+					case 0: GameBoard.shiftUp(); break;
+					case 1: GameBoard.shiftDown(); break;
+					case 2: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				count++;
+				GameBoard.checkGameOver();
+				if (GameBoard.getStatus() && GameBoard.hasMoved()) {
+					GameBoard.addRandomTile();
+					GameBoard.checkGameOver();
+				}
+			}
+		}
+		return count;
+	}
+
+	// plays the games of playRandomGames under the standard rules, without
+	// GameBoard or Rules: the winning tile (2^11) and the 10% chance of a 4
+	// are constants, as they were before the rules became configurable
+	private static long playHardcodedGames(int games) {
+		Random moves = new Random(1);
+		Random tiles = new Random(1);
+		byte[] b = new byte[16];
+		long count = 0;
+		for (int g=0; g<games; g++) {
+			Arrays.fill(b, (byte) 0);
+			spawnHardcoded(b, tiles);
+			spawnHardcoded(b, tiles);
+			boolean over = false;
+			while (!over) {
+				boolean moved = slideHardcoded(b, moves.nextInt(4));
+				count++;
+				over = overHardcoded(b);
+				if (!over && moved) {
+					spawnHardcoded(b, tiles);
+					over = overHardcoded(b);
+				}
+			}
+		}
+		return count;
+	}
+
+	// slides a 4x4 board of exponents, returning whether anything moved
+	private static boolean slideHardcoded(byte[] b, int dir) {
+		boolean moved = false;
+		for (int k=0; k<4; k++) {
+			int start, step;
+			switch (dir) {
+				case 0: start = k; step = 4; break;
+				case 1: start = 12 + k; step = -4; break;
+				case 2: start = 4*k; step = 1; break;
+				default: start = 4*k + 3; step = -1; break;
+			}
+			int next = start;
+			boolean canMerge = false;
+			for (int n=0, i=start; n<4; n++, i+=step) {
+				byte e = b[i];
+				if (e == 0) {
+					continue;
+				}
+				b[i] = 0;
+				if (canMerge && b[next-step] == e) {
+					b[next-step] = (byte) (e + 1);
+					canMerge = false;
+					moved = true;
+				}
+				else {
+					b[next] = e;
+					moved |= next != i;
+					next += step;
+					canMerge = true;
+				}
+			}
+		}
+		return moved;
+	}
+
+	private static void spawnHardcoded(byte[] b, Random r) {
+		int free = 0;
+		for (byte e : b) {
+			if (e == 0) {
+				free++;
+			}
+		}
+		int k = (int) (r.nextDouble()*free);
+		int cell = 0;
+		while (b[cell] != 0 || k-- > 0) {
+			cell++;
+		}
+		b[cell] = (byte) (r.nextDouble() >= 0.9 ? 2 : 1);
+	}
+
+	// a 2048 tile ends the game, as does a board with no move
+	private static boolean overHardcoded(byte[] b) {
+		for (int c=0; c<16; c++) {
+			if (b[c] == 11) {
+				return true;
+			}
+		}
+		for (int c=0; c<16; c++) {
+			if (b[c] == 0 || (c < 12 && b[c+4] == b[c]) || ((c & 3) < 3 && b[c+1] == b[c])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @brief A unit of work to be timed
+	 */
+	interface Work {
+		/**
+		 * @brief Runs the work once
+		 * @return Number of operations performed
+		 */
+		long run();
+	}
+
+	/**
+	 * @brief Runs the work once to warm up, then times several rounds
+	 * @param w Work to be timed
+	 * @return Best rate seen, in operations per second
+	 */
+	static double bestOf(Work w) {
+		w.run();
+		double best = 0;
+		for (int i=0; i<ROUNDS; i++) {
+			long start = System.nanoTime();
+			long ops = w.run();
+			long elapsed = System.nanoTime() - start;
+			best = Math.max(best, ops * 1e9 / elapsed);
+		}
+		return best;
+	}
+
+	/**
+	 * @brief Prints one line of results
+	 * @param name Name of what was measured
+	 * @param rate Rate that was measured
+	 * @param unit Unit of the rate
+	 */
+	static void report(String name, double rate, String unit) {
+		System.out.printf("  %-28s %,16.0f %s%n", name, rate, unit);
+	}
+}
@@ -0,0 +1,333 @@
+/**
+ * @file BitBoard.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a packed representation of a standard 4x4 board
+ * @date Apr. 12th, 2021
+ */
+
+import java.util.random.RandomGenerator;
+
+/**
+ * @brief Utilities for a 4x4 board packed into a single long
+ * @details Each cell holds the base 2 logarithm of its tile (the exponent) in
+ * 4 bits, with 0 for an empty cell, so tiles up to 32768 can be stored. Cell
+ * (r, c) is held in bits 16r+4c to 16r+4c+3. Each row therefore fits in 16
+ * bits with column 0 in the lowest bits, and any row can be used as a table index.
+ */
+public class BitBoard {
+
+	/**
+	 * @brief Mask of a single row
+	 */
+	public static final int ROW_MASK = 0xFFFF;
+
+	/**
+	 * @brief Move directions, in the order used by move and every player
+	 */
+	public static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+
+	/**
+	 * @brief Converts a tile value to its exponent
+	 * @param val Integer representing a tile, either 0 or a power of 2
+	 * @return Base 2 logarithm of the tile, or 0 for an empty cell
+	 */
+	public static int exponent(int val) {
+		return val == 0 ? 0 : Integer.numberOfTrailingZeros(val);
+	}
+
+	/**
+	 * @brief Converts an exponent to its tile value
+	 * @param exp Integer representing a base 2 logarithm, or 0 for an empty cell
+	 * @return The tile value, or 0 for an empty cell
+	 */
+	public static int tile(int exp) {
+		return exp == 0 ? 0 : 1 << exp;
+	}
+
+	/**
+	 * @brief Packs a 4x4 board of tile values into a long
+	 * @param b 2D array of integers representing a 4x4 board
+	 * @return The packed board
+	 * @throws IllegalArgumentException If the board is not 4x4 or a tile is
+	 * larger than 32768
+	 */
+	public static long pack(int[][] b) {
+		if (b.length != 4) {
+			throw new IllegalArgumentException("Only 4x4 boards can be packed");
+		}
+		long packed = 0;
+		for (int r=0; r<4; r++) {
+			if (b[r].length != 4) {
+				throw new IllegalArgumentException("Only 4x4 boards can be packed");
+			}
+			for (int c=0; c<4; c++) {
+				int exp = exponent(b[r][c]);
+				if (exp > 15) {
+					throw new IllegalArgumentException("Tile too large to be packed");
+				}
+				packed |= (long) exp << (16*r + 4*c);
+			}
+		}
+		return packed;
+	}
+
+	/**
+	 * @brief Unpacks a board into tile values
+	 * @param packed The packed board
+	 * @param out 4x4 array of integers which is filled with the tile values
+	 */
+	public static void unpack(long packed, int[][] out) {
+		for (int r=0; r<4; r++) {
+			for (int c=0; c<4; c++) {
+				out[r][c] = tile(get(packed, r, c));
+			}
+		}
+	}
+
+	/**
+	 * @brief Unpacks a board into a new array of tile values
+	 * @param packed The packed board
+	 * @return 4x4 array of integers representing the board
+	 */
+	public static int[][] unpack(long packed) {
+		int[][] b = new int[4][4];
+		unpack(packed, b);
+		return b;
+	}
+
+	/**
+	 * @brief Gets the exponent in a single cell
+	 * @param packed The packed board
+	 * @param r Integer representing the row of the cell
+	 * @param c Integer representing the column of the cell
+	 * @return The exponent of the tile in the cell, or 0 if it is empty
+	 */
+	public static int get(long packed, int r, int c) {
+		return (int) (packed >>> (16*r + 4*c)) & 0xF;
+	}
+
+	/**
+	 * @brief Gets a single row of the board
+	 * @param packed The packed board
+	 * @param r Integer representing the row index
+	 * @return 16 bit row, with column 0 in the lowest 4 bits
+	 */
+	public static int row(long packed, int r) {
+		return (int) (packed >>> (16*r)) & ROW_MASK;
+	}
+
+	/**
+	 * @brief Transposes the board, so that rows become columns
+	 * @param x The packed board
+	 * @return The transposed board
+	 */
+	public static long transpose(long x) {
+		long a1 = x & 0xF0F00F0FF0F00F0FL;
+		long a2 = x & 0x0000F0F00000F0F0L;
+		long a3 = x & 0x0F0F00000F0F0000L;
+		long a = a1 | (a2 << 12) | (a3 >>> 12);
+		long b1 = a & 0xFF00FF0000FF00FFL;
+		long b2 = a & 0x00FF00FF00000000L;
+		long b3 = a & 0x00000000FF00FF00L;
+		return b1 | (b2 >>> 24) | (b3 << 24);
+	}
+
+	/**
+	 * @brief Mirrors the board left to right, so that columns are reversed
+	 * @param x The packed board
+	 * @return The mirrored board
+	 */
+	public static long mirror(long x) {
+		return ((x & 0x000F000F000F000FL) << 12) | ((x & 0x00F000F000F000F0L) << 4)
+				| ((x & 0x0F000F000F000F00L) >>> 4) | ((x & 0xF000F000F000F000L) >>> 12);
+	}
+
+	/**
+	 * @brief Flips the board upside down, so that rows are reversed
+	 * @param x The packed board
+	 * @return The flipped board
+	 */
+	public static long flip(long x) {
+		// reversing the bytes reverses the rows, but also the two bytes within each row
+		x = Long.reverseBytes(x);
+		return ((x & 0x00FF00FF00FF00FFL) << 8) | ((x >>> 8) & 0x00FF00FF00FF00FFL);
+	}
+
+	/**
+	 * @brief Moves all tiles in one direction
+	 * @details Uses tables of every possible row, built from the rules in
+	 * GameBoard.slideLine. The board does not change if no tile can move.
+	 * Merging two 32768 tiles is not representable and leaves a single 32768.
+	 * @param b The packed board
+	 * @param dir Direction to move in (UP, DOWN, LEFT or RIGHT)
+	 * @return The packed board after the move
+	 */
+	public static long move(long b, int dir) {
+		switch (dir) {
+			case UP:    return transpose(moveRows(transpose(b), Tables.LEFT));
+			case DOWN:  return transpose(moveRows(transpose(b), Tables.RIGHT));
+			case LEFT:  return moveRows(b, Tables.LEFT);
+			case RIGHT: return moveRows(b, Tables.RIGHT);
+			default:    throw new IllegalArgumentException("Invalid direction: " + dir);
+		}
+	}
+
+	/**
+	 * @brief Gets the score gained by moving all tiles in one direction
+	 * @param b The packed board
+	 * @param dir Direction to move in (UP, DOWN, LEFT or RIGHT)
+	 * @return Total value of the tiles merged by the move
+	 */
+	public static int moveScore(long b, int dir) {
+		if (dir == UP || dir == DOWN) {
+			b = transpose(b);
+		}
+		int[] score = (dir == UP || dir == LEFT) ? Tables.SCORE_LEFT : Tables.SCORE_RIGHT;
+		return score[(int) b & 0xFFFF] + score[(int) (b >>> 16) & 0xFFFF]
+				+ score[(int) (b >>> 32) & 0xFFFF] + score[(int) (b >>> 48) & 0xFFFF];
+	}
+
+	/**
+	 * @brief Works out the board and score after each of the four moves, in one pass
+	 * @details Each row is read once for both left and right, and the board
+	 * is transposed once so each column is read once for both up and down,
+	 * where calling move and moveScore for every direction would transpose
+	 * four times and read every row eight times. Allocates nothing.
+	 * @param b The packed board
+	 * @param next Array of four longs, indexed by direction, which are given
+	 * the packed board after each move
+	 * @param scores Array of four integers, indexed by direction, which are
+	 * given the total value of the tiles merged by each move
+	 * @return Bit mask of the moves that change the board, with bit UP,
+	 * DOWN, LEFT or RIGHT set for each
+	 */
+	public static int successors(long b, long[] next, int[] scores) {
+		long t = transpose(b);
+		int r0 = (int) b & 0xFFFF, r1 = (int) (b >>> 16) & 0xFFFF;
+		int r2 = (int) (b >>> 32) & 0xFFFF, r3 = (int) (b >>> 48) & 0xFFFF;
+		int c0 = (int) t & 0xFFFF, c1 = (int) (t >>> 16) & 0xFFFF;
+		int c2 = (int) (t >>> 32) & 0xFFFF, c3 = (int) (t >>> 48) & 0xFFFF;
+		char[] left = Tables.LEFT, right = Tables.RIGHT;
+		int[] scoreLeft = Tables.SCORE_LEFT, scoreRight = Tables.SCORE_RIGHT;
+
+		long l = left[r0] | (long) left[r1] << 16 | (long) left[r2] << 32 | (long) left[r3] << 48;
+		long r = right[r0] | (long) right[r1] << 16 | (long) right[r2] << 32 | (long) right[r3] << 48;
+		long u = left[c0] | (long) left[c1] << 16 | (long) left[c2] << 32 | (long) left[c3] << 48;
+		long d = right[c0] | (long) right[c1] << 16 | (long) right[c2] << 32 | (long) right[c3] << 48;
+		next[UP] = transpose(u);
+		next[DOWN] = transpose(d);
+		next[LEFT] = l;
+		next[RIGHT] = r;
+		scores[UP] = scoreLeft[c0] + scoreLeft[c1] + scoreLeft[c2] + scoreLeft[c3];
+		scores[DOWN] = scoreRight[c0] + scoreRight[c1] + scoreRight[c2] + scoreRight[c3];
+		scores[LEFT] = scoreLeft[r0] + scoreLeft[r1] + scoreLeft[r2] + scoreLeft[r3];
+		scores[RIGHT] = scoreRight[r0] + scoreRight[r1] + scoreRight[r2] + scoreRight[r3];
+		return (u != t ? 1 << UP : 0) | (d != t ? 1 << DOWN : 0)
+				| (l != b ? 1 << LEFT : 0) | (r != b ? 1 << RIGHT : 0);
+	}
+
+	/**
+	 * @brief Gets whether any move changes the board
+	 * @param b The packed board
+	 * @return True if the game can continue, False if it is over
+	 */
+	public static boolean canMove(long b) {
+		if (countEmpty(b) > 0) {
+			return true;
+		}
+		// a full board can only move by merging
+		return moveRows(b, Tables.LEFT) != b || moveRows(transpose(b), Tables.LEFT) != transpose(b);
+	}
+
+	private static long moveRows(long b, char[] table) {
+		return (long) table[(int) b & 0xFFFF]
+				| (long) table[(int) (b >>> 16) & 0xFFFF] << 16
+				| (long) table[(int) (b >>> 32) & 0xFFFF] << 32
+				| (long) table[(int) (b >>> 48) & 0xFFFF] << 48;
+	}
+
+	/**
+	 * @brief The result of moving every possible row, built on first use
+	 */
+	static class Tables {
+		static final char[] LEFT = new char[1 << 16];
+		static final char[] RIGHT = new char[1 << 16];
+		static final int[] SCORE_LEFT = new int[1 << 16];
+		static final int[] SCORE_RIGHT = new int[1 << 16];
+
+		static {
+			int[] line = new int[4];
+			for (int row=0; row<(1 << 16); row++) {
+				// left: slide towards column 0
+				for (int c=0; c<4; c++) {
+					line[c] = tile((row >>> (4*c)) & 0xF);
+				}
+				SCORE_LEFT[row] = GameBoard.slideLine(line, 4);
+				LEFT[row] = (char) toRow(line, false);
+
+				// right: slide the reversed row, then reverse it back
+				for (int c=0; c<4; c++) {
+					line[3-c] = tile((row >>> (4*c)) & 0xF);
+				}
+				SCORE_RIGHT[row] = GameBoard.slideLine(line, 4);
+				RIGHT[row] = (char) toRow(line, true);
+			}
+		}
+
+		private static int toRow(int[] line, boolean reversed) {
+			int row = 0;
+			for (int c=0; c<4; c++) {
+				int exp = Math.min(exponent(line[c]), 15);
+				row |= exp << (4 * (reversed ? 3-c : c));
+			}
+			return row;
+		}
+	}
+
+	/**
+	 * @brief Adds a 2 or a 4 to a random empty cell
+	 * @details Draws the same numbers as GameBoard.addRandomTile and uses
+	 * them the same way: the first picks an empty cell, counted in row order,
+	 * and the second picks the tile. So a java.util.Random seeded as in
+	 * GameBoard.setSeed adds the same tiles for the same moves.
+	 * @param b The packed board, which must have an empty cell
+	 * @param rand Source of random numbers
+	 * @param fourChance Probability between 0 and 1 that the tile is a 4
+	 * @return The packed board with the new tile
+	 */
+	public static long spawn(long b, RandomGenerator rand, double fourChance) {
+		int k = (int) (rand.nextDouble() * countEmpty(b));
+		long tile = rand.nextDouble() >= 1 - fourChance ? 2 : 1;
+		for (int i=0; i<16; i++) {
+			if (((b >>> (4*i)) & 0xF) == 0 && k-- == 0) {
+				return b | tile << (4*i);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * @brief Counts the empty cells in the board
+	 * @param x The packed board
+	 * @return Number of empty cells
+	 */
+	public static int countEmpty(long x) {
+		// set the lowest bit of each nibble that is non-zero, then count them
+		x |= (x >>> 2);
+		x |= (x >>> 1);
+		return 16 - Long.bitCount(x & 0x1111111111111111L);
+	}
+
+	/**
+	 * @brief Gets the largest exponent on the board
+	 * @param x The packed board
+	 * @return The largest exponent, or 0 for an empty board
+	 */
+	public static int maxExponent(long x) {
+		int max = 0;
+		for (int i=0; i<16; i++) {
+			max = Math.max(max, (int) (x >>> (4*i)) & 0xF);
+		}
+		return max;
+	}
+}
@@ -0,0 +1,360 @@
+/**
+ * @file Campaign.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a simulation campaign split across several processes
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @brief Plays every policy on every seed of a range, split into shards that
+ * each run in their own JVM
+ * @details GameBoard holds a single game in static state, so a process plays
+ * one game at a time, and more games at once means more processes. Each
+ * process also gets its own heap, and a crash loses only its own shard.
+ *
+ * The games (one for each seed and policy) are numbered, and shard i of n
+ * plays the games whose number leaves i when divided by n, so every shard
+ * gets a share of each policy. A shard saves the number of games it has
+ * played and its GameStats for each policy to a checkpoint file every few
+ * seconds, and a shard that is started again carries on from its checkpoint.
+ * The coordinator starts the shards, starts again any that fail, and merges
+ * their statistics once all of them have finished. The tiles of each game,
+ * and the moves of a policy with randomness of its own, come from its seed,
+ * so a resumed shard plays the same games as one that never stopped.
+ */
+public class Campaign {
+
+	private static final int MAGIC = 0x32304350; // "20CP"
+	private static final long CHECKPOINT_NANOS = 5_000_000_000L;
+	private static final int MAX_RESTARTS = 3;
+
+	private final Path dir;
+	private final long firstSeed, seeds;
+	private final String[] policies;
+
+	// time between checkpoints, and the number of games a shard plays before
+	// failing on purpose, which the tests change to check resuming
+	long checkpointNanos = CHECKPOINT_NANOS;
+	long failAfter = Long.MAX_VALUE;
+
+	/**
+	 * @brief Describes a campaign
+	 * @param dir Directory holding the checkpoints of the shards
+	 * @param firstSeed First seed of the range
+	 * @param seeds Number of seeds, each played once by every policy
+	 * @param policies Names of the policies, as in Policy.byName
+	 * @throws IllegalArgumentException If there are no seeds or no policies,
+	 * or a policy name is not recognised
+	 */
+	public Campaign(Path dir, long firstSeed, long seeds, String... policies) {
+		if (seeds < 1 || policies.length == 0) {
+			throw new IllegalArgumentException("A campaign needs at least one seed and one policy");
+		}
+		for (String p : policies) {
+			Policy.checkName(p);
+		}
+		this.dir = dir;
+		this.firstSeed = firstSeed;
+		this.seeds = seeds;
+		this.policies = policies.clone();
+	}
+
+	/**
+	 * @brief Gets the number of games in the campaign
+	 * @return Seeds times policies
+	 */
+	public long games() {
+		return seeds * policies.length;
+	}
+
+	/**
+	 * @brief Plays one shard in this process, resuming from its checkpoint
+	 * @param shard Number of the shard, from 0
+	 * @param shards Number of shards the campaign is split into
+	 * @return Statistics of the shard for each policy
+	 * @throws IllegalArgumentException If the checkpoint belongs to a different campaign
+	 * @throws IOException If the checkpoint cannot be read or written
+	 */
+	public GameStats[] runShard(int shard, int shards) throws IOException {
+		Files.createDirectories(dir);
+		Path file = checkpoint(shard, shards);
+		GameStats[] stats = new GameStats[policies.length];
+		long done = load(file, shards, stats);
+		long total = shardGames(shard, shards);
+
+		// the shards already fill the cores, so each searches on a single thread
+		ForkJoinPool pool = new ForkJoinPool(1);
+		Policy.Factory[] factories = new Policy.Factory[policies.length];
+		try {
+			Policy[] players = new Policy[policies.length];
+			for (int p=0; p<policies.length; p++) {
+				factories[p] = Policy.byName(policies[p], Rules.STANDARD, pool);
+				players[p] = factories[p].get();
+			}
+			long lastSave = System.nanoTime();
+			for (long played=1; done < total; played++) {
+				long game = shard + done * shards;
+				int p = (int) (game / seeds);
+				play(players[p], firstSeed + game % seeds, stats[p]);
+				if (played == failAfter) {
+					throw new IllegalStateException("Shard " + shard + " failed after " + played + " games");
+				}
+				done++;
+				if (System.nanoTime() - lastSave >= checkpointNanos) {
+					save(file, shards, done, stats);
+					lastSave = System.nanoTime();
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+			for (Policy.Factory f : factories) {
+				if (f != null) {
+					f.close();
+				}
+			}
+		}
+		save(file, shards, done, stats);
+		return stats;
+	}
+
+	/**
+	 * @brief Plays the whole campaign, with each shard in its own JVM
+	 * @details Shards that exit with an error are started again, resuming
+	 * from their checkpoints, up to 3 times each. The output of each shard is
+	 * appended to shard-i-of-n.log in the campaign directory.
+	 * @param processes Number of processes, which is also the number of shards
+	 * @return Statistics for each policy, merged over every shard
+	 * @throws IllegalStateException If a shard keeps failing
+	 * @throws IOException If a process cannot be started or a checkpoint read
+	 * @throws InterruptedException If interrupted while waiting for the shards
+	 */
+	public GameStats[] run(int processes) throws IOException, InterruptedException {
+		Files.createDirectories(dir);
+		String java = ProcessHandle.current().info().command().orElse("java");
+		String classPath = System.getProperty("java.class.path");
+
+		List<Integer> pending = new ArrayList<>();
+		for (int s=0; s<processes; s++) {
+			pending.add(s);
+		}
+		// the first run of each shard is not a restart
+		for (int restarts=0; restarts<=MAX_RESTARTS && !pending.isEmpty(); restarts++) {
+			Process[] running = new Process[pending.size()];
+			for (int i=0; i<running.length; i++) {
+				int s = pending.get(i);
+				List<String> cmd = new ArrayList<>(Arrays.asList(java, "-cp", classPath, "Campaign",
+						"-shard", String.valueOf(s), "-processes", String.valueOf(processes),
+						"-seed", String.valueOf(firstSeed), dir.toString(), String.valueOf(seeds)));
+				cmd.addAll(Arrays.asList(policies));
+				running[i] = new ProcessBuilder(cmd)
+						.redirectErrorStream(true)
+						.redirectOutput(ProcessBuilder.Redirect.appendTo(
+								dir.resolve("shard-" + s + "-of-" + processes + ".log").toFile()))
+						.start();
+			}
+			List<Integer> failed = new ArrayList<>();
+			for (int i=0; i<running.length; i++) {
+				if (running[i].waitFor() != 0) {
+					failed.add(pending.get(i));
+				}
+			}
+			pending = failed;
+		}
+		if (!pending.isEmpty()) {
+			throw new IllegalStateException("Shards " + pending + " still failed after " + MAX_RESTARTS + " restarts");
+		}
+		return merge(processes);
+	}
+
+	/**
+	 * @brief Merges the checkpoints of finished shards
+	 * @param shards Number of shards the campaign was split into
+	 * @return Statistics for each policy
+	 * @throws IllegalStateException If a shard has not finished
+	 * @throws IOException If a checkpoint cannot be read
+	 */
+	public GameStats[] merge(int shards) throws IOException {
+		GameStats[] merged = new GameStats[policies.length];
+		for (int p=0; p<policies.length; p++) {
+			merged[p] = new GameStats();
+		}
+		for (int s=0; s<shards; s++) {
+			GameStats[] stats = new GameStats[policies.length];
+			if (load(checkpoint(s, shards), shards, stats) < shardGames(s, shards)) {
+				throw new IllegalStateException("Shard " + s + " has not finished");
+			}
+			for (int p=0; p<policies.length; p++) {
+				merged[p].merge(stats[p]);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * @brief Gets the number of games played so far, from the checkpoints
+	 * @param shards Number of shards the campaign is split into
+	 * @return Number of games saved in the checkpoints
+	 * @throws IOException If a checkpoint cannot be read
+	 */
+	public long gamesDone(int shards) throws IOException {
+		long done = 0;
+		for (int s=0; s<shards; s++) {
+			done += load(checkpoint(s, shards), shards, new GameStats[policies.length]);
+		}
+		return done;
+	}
+
+	// plays one game through GameBoard, recording it in the statistics
+	private static void play(Policy policy, long seed, GameStats stats) {
+		policy.newGame(seed);
+		GameBoard.setSeed(seed);
+		GameBoard.init(4, 4);
+		int moves = 0;
+		while (GameBoard.getStatus()) {
+			switch (policy.chooseMove(BitBoard.pack(GameBoard.getBoard()))) {
+				case BitBoard.UP: GameBoard.shiftUp(); break;
+				case BitBoard.DOWN: GameBoard.shiftDown(); break;
+				case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+				case BitBoard.RIGHT: GameBoard.shiftRight(); break;
+				default: break;
+			}
+			if (!GameBoard.hasMoved()) {
+				// a policy that cannot change the board ends its game
+				break;
+			}
+			moves++;
+			GameBoard.checkGameOver();
+			if (GameBoard.getStatus()) {
+				GameBoard.addRandomTile();
+				GameBoard.checkGameOver();
+			}
+			stats.recordMove(moves, GameBoard.getEmptyCount());
+		}
+		int maxTile = 0;
+		for (int[] row : GameBoard.getBoard()) {
+			for (int v : row) {
+				maxTile = Math.max(maxTile, v);
+			}
+		}
+		stats.recordGame(GameBoard.getScore(), moves, maxTile);
+	}
+
+	// the number of games played by a shard
+	private long shardGames(int shard, int shards) {
+		return games() <= shard ? 0 : (games() - shard + shards - 1) / shards;
+	}
+
+	private Path checkpoint(int shard, int shards) {
+		return dir.resolve("shard-" + shard + "-of-" + shards + ".ckpt");
+	}
+
+	// fills in the statistics from a checkpoint, or with empty ones if there is
+	// none yet, and returns the number of games already played
+	private long load(Path file, int shards, GameStats[] stats) throws IOException {
+		if (!Files.exists(file)) {
+			for (int p=0; p<policies.length; p++) {
+				stats[p] = new GameStats();
+			}
+			return 0;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IllegalArgumentException(file + " is not a campaign checkpoint");
+			}
+			boolean same = in.readLong() == firstSeed && in.readLong() == seeds
+					&& in.readInt() == shards && in.readInt() == policies.length;
+			for (int p=0; same && p<policies.length; p++) {
+				same = in.readUTF().equals(policies[p]);
+			}
+			if (!same) {
+				throw new IllegalArgumentException(file + " belongs to a different campaign");
+			}
+			long done = in.readLong();
+			for (int p=0; p<policies.length; p++) {
+				stats[p] = GameStats.read(in);
+			}
+			return done;
+		}
+	}
+
+	// writes next to the checkpoint and moves it over, so a crash during the
+	// save leaves the previous checkpoint intact
+	private void save(Path file, int shards, long done, GameStats[] stats) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeLong(firstSeed);
+			out.writeLong(seeds);
+			out.writeInt(shards);
+			out.writeInt(policies.length);
+			for (String p : policies) {
+				out.writeUTF(p);
+			}
+			out.writeLong(done);
+			for (GameStats s : stats) {
+				s.write(out);
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @brief Runs a campaign, or one shard of it, from the command line
+	 * @details Usage: java Campaign [-processes n] [-seed first] <dir> <seeds> <policy>...
+	 * See Policy.byName for the policy names. The coordinator starts its
+	 * shards with the same command and an extra -shard i option.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int processes = Runtime.getRuntime().availableProcessors();
+		long firstSeed = 0;
+		int shard = -1;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i += 2) {
+			if (i + 1 >= args.length) {
+				break;
+			}
+			switch (args[i]) {
+				case "-processes": processes = Integer.parseInt(args[i+1]); break;
+				case "-seed": firstSeed = Long.parseLong(args[i+1]); break;
+				case "-shard": shard = Integer.parseInt(args[i+1]); break;
+				default: i = args.length; break;
+			}
+		}
+		if (args.length - i < 3) {
+			System.err.println("Usage: java Campaign [-processes n] [-seed first] <dir> <seeds> <policy>...");
+			System.exit(1);
+		}
+		Campaign c = new Campaign(Paths.get(args[i]), firstSeed, Long.parseLong(args[i+1]),
+				Arrays.copyOfRange(args, i + 2, args.length));
+
+		if (shard >= 0) {
+			c.runShard(shard, processes);
+			return;
+		}
+		long before = c.gamesDone(processes);
+		long start = System.nanoTime();
+		GameStats[] stats = c.run(processes);
+		double secs = (System.nanoTime() - start) / 1e9;
+		for (int p=0; p<c.policies.length; p++) {
+			System.out.println("== " + c.policies[p] + " ==");
+			stats[p].print(System.out);
+		}
+		System.out.printf("%,d games in %.1f s (%,.0f games/s) on %d processes%n",
+				c.games() - before, secs, (c.games() - before) / secs, processes);
+	}
+}
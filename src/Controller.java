@@ -5,8 +5,14 @@
  * @date Apr. 12th, 2021
  */
 
-import java.util.Arrays;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @brief A controller responsible for combining the game state (model) and
@@ -17,20 +23,131 @@ public class Controller {
 	// changes based on whether the user wants to keep playing or not
 	static boolean playing;
 
-	// a scanner for reading user input
-	static Scanner sc;
+	// a reader for user input, one command token at a time
+	static InputReader in;
 	static int rows, cols;
 	
 	// normal is true for regular 2048 board, false for custom board
 	// (determined in setup method)
 	static boolean normal;
 	
+	// rules for the game variant being played
+	static Rules rules = Rules.STANDARD;
+	
+	// headless is true when running a scripted batch, which disables the
+	// console UI so that only final scores and timing are printed
+	static boolean headless;
+	
+	// search used for hints, created the first time a hint is asked for
+	static Expectimax hints;
+	static int gamesPlayed;
+	static long movesPlayed;
+	
+	// leaderboard kept in a file across sessions, or null for none;
+	// it is only read when the first game ends
+	static Path leaderboardFile;
+	static Leaderboard leaderboard;
+	
+	// statistics over the session's moves and games, or null if not wanted
+	static GameStats stats;
+	
+	// file each game is recorded to, replacing the game before, or null for none
+	static Path recordFile;
+	
 	/**
 	 * @brief Initializes the Controller
 	 */
 	public static void init() {
 		setup();
 		gameLoop();
+		if (stats != null) {
+			stats.print(System.out);
+		}
+	}
+	
+	/**
+	 * @brief Sets the rules used for every following game
+	 * @param r Rules for the game variant
+	 */
+	public static void setRules(Rules r) {
+		rules = r;
+	}
+	
+	/**
+	 * @brief Sets the file that final scores are recorded in
+	 * @details The file is created when the first game ends if it does not
+	 * exist. Interactive sessions save it after every game and show the
+	 * rank of each score, batch runs save it once at the end.
+	 * @param file Path of the leaderboard file
+	 */
+	public static void setLeaderboard(Path file) {
+		leaderboardFile = file;
+		leaderboard = null;
+	}
+	
+	/**
+	 * @brief Records each game to a file, which can be opened with Replay
+	 * @details Each game replaces the one before, so the file holds the last
+	 * game of the session
+	 * @param file Path of the replay file
+	 */
+	public static void setRecording(Path file) {
+		recordFile = file;
+	}
+	
+	/**
+	 * @brief Turns on statistics for the session, which are printed at the end
+	 */
+	public static void enableStats() {
+		stats = new GameStats();
+	}
+	
+	/**
+	 * @brief Plays a file of scripted moves through the controller without the UI
+	 * @details The file uses the same commands as the console (u, d, l and r for
+	 * moves, y to start the next game and n to stop). Moves made after a game
+	 * is over are skipped until the next y, exactly as invalid input is in the
+	 * console. The file is streamed, so it is never loaded into memory.
+	 * Only the final score of each game and the overall timing are printed.
+	 * @param path Path of the file of moves
+	 * @param r Integer representing the number of rows in each board
+	 * @param c Integer representing the number of columns in each board
+	 * @param seed Seed for the random tiles, so that runs can be repeated
+	 * @throws IllegalArgumentException If there are fewer than 4 rows or columns
+	 * @throws IOException If the file cannot be read
+	 */
+	public static void runBatch(String path, int r, int c, long seed) throws IOException {
+		if (r < 4 || c < 4) {
+			throw new IllegalArgumentException("The board must have at least 4 rows and columns");
+		}
+		try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			in = new InputReader(ch);
+			headless = true;
+			playing = true;
+			normal = (r == 4 && c == 4);
+			rows = r;
+			cols = c;
+			gamesPlayed = 0;
+			movesPlayed = 0;
+			GameBoard.setSeed(seed);
+			
+			long start = System.nanoTime();
+			gameLoop();
+			long elapsed = System.nanoTime() - start;
+			
+			double secs = elapsed / 1e9;
+			System.out.printf("%d games, %d moves in %.3f s (%.0f moves/s)%n",
+					gamesPlayed, movesPlayed, secs, movesPlayed / secs);
+			if (leaderboard != null) {
+				leaderboard.save(leaderboardFile);
+			}
+			if (stats != null) {
+				stats.print(System.out);
+			}
+		}
+		finally {
+			headless = false;
+		}
 	}
 	
 	/**
@@ -41,18 +158,39 @@ public class Controller {
 	 */
 	public static void gameLoop() {
 		while(playing) {
+			long movesBefore = movesPlayed;
 			launch();
-			UserInterface.printBoard(GameBoard.getBoard());
-			UserInterface.printEndingMessage(GameBoard.has2048(), GameBoard.getScore(), GameBoard.getHighScore());
-			while (true) {
+			if (!playing && movesPlayed == movesBefore) {
+				// input ended before this game started
+				break;
+			}
+			gamesPlayed++;
+			recordScore();
+			if (stats != null) {
+				stats.recordGame(GameBoard.getScore(), (int) (movesPlayed - movesBefore),
+						maxTile(GameBoard.getBoard()));
+			}
+			if (headless) {
+				System.out.println("Game " + gamesPlayed + ": score " + GameBoard.getScore()
+						+ (GameBoard.has2048() ? " (won)" : ""));
+			}
+			else {
+				UserInterface.printBoard(GameBoard.getBoard());
+				if (leaderboard != null) {
+					UserInterface.printRank(leaderboard.rank(GameBoard.getScore()), leaderboard.count());
+				}
+				UserInterface.printEndingMessage(GameBoard.has2048(), GameBoard.getWinTile(),
+						GameBoard.getScore(), GameBoard.getHighScore());
+			}
+			while (playing) {
 				// See if user wants to play again, if not, set playing to false
-				String choice = sc.next();
-				System.out.println();
-				if (choice.equals("n")) {
+				int choice = in.nextCommand();
+				newLine();
+				if (choice == 'n' || choice == InputReader.EOF) {
 					playing = false;
 				}
-				else if (!choice.equals("y")) {
-					System.out.print("Invalid choice, try again: ");
+				else if (choice != 'y') {
+					invalidChoice();
 					continue;
 				}
 				break;
@@ -66,7 +204,7 @@ public class Controller {
 	 * the user for game mode selection.
 	 */
 	public static void setup() {
-		sc = new Scanner(System.in);
+		in = new InputReader(System.in);
 		playing = true;
 		normal = true;
 		rows = 4; // Default size
@@ -76,18 +214,22 @@ public class Controller {
 		UserInterface.printGameModePrompt();
 		
 		while (true) {
-			String choice = sc.next();
+			String choice = in.next();
 			System.out.println();
-			if (choice.equals("1")) {
+			if (choice == null) {
+				// no more input, nothing to play
+				playing = false;
+			}
+			else if (choice.equals("1")) {
 				normal = true;
 			}
 			else if (choice.equals("2")) {
 				normal = false;
 				System.out.print("Enter number of rows in custom board: ");
-				rows = sc.nextInt();
+				rows = in.nextInt();
 				System.out.println();
 				System.out.print("Enter number of columns in custom board: ");
-				cols = sc.nextInt();
+				cols = in.nextInt();
 				System.out.println();
 			}
 			else if (choice.equals("exit")) {
@@ -110,52 +252,134 @@ public class Controller {
 	 * over, and random tiles are added if applicable.
 	 */
 	public static void launch() {
-		GameBoard.init(rows, cols);
+		GameBoard.init(rows, cols, rules);
+		
+		try (Replay.Recorder rec = recordFile == null ? null
+				: new Replay.Recorder(recordFile, rows, cols, Replay.DEFAULT_INTERVAL, rules)) {
+			play(rec);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// plays the game set up by launch, recording its moves if rec is not null
+	private static void play(Replay.Recorder rec) throws IOException {
+		int moves = 0;
 		while (GameBoard.getStatus()) {
 			
 			// Print the board, score and high score first using View module
-			int[][] initialB = new int[rows][cols];
-			int[][] b = GameBoard.getBoard();
-			
-			for (int i=0; i<rows; i++) {
-				for (int j=0; j<cols; j++) {
-					initialB[i][j] = b[i][j];
-				}
+			if (!headless) {
+				UserInterface.printScore(GameBoard.getScore(), GameBoard.getHighScore());
+				UserInterface.printBoard(GameBoard.getBoard());
+				
+				// Get user input to make a move
+				UserInterface.printMovePrompt();
 			}
-			
-			UserInterface.printScore(GameBoard.getScore(), GameBoard.getHighScore());
-			UserInterface.printBoard(b);
-			
-			// Get user input to make a move
-			UserInterface.printMovePrompt();
 
+			int move;
 			while (true) {
-				String move = sc.next();
-				System.out.println();
-				if (move.equals("u"))
+				move = in.nextCommand();
+				newLine();
+				if (move == 'u')
 					GameBoard.shiftUp();
-				else if (move.equals("d"))
+				else if (move == 'd')
 					GameBoard.shiftDown();
-				else if (move.equals("l"))
+				else if (move == 'l')
 					GameBoard.shiftLeft();
-				else if (move.equals("r"))
+				else if (move == 'r')
 					GameBoard.shiftRight();
+				else if (move == 'h' && !headless) {
+					printHint(GameBoard.getBoard());
+					continue;
+				}
+				else if (move == InputReader.EOF) {
+					// input ended mid game, end the game and the session
+					GameBoard.setStatus(false);
+					playing = false;
+					return;
+				}
 				else {
-					System.out.print("Invalid choice, try again: ");
+					invalidChoice();
 					continue;
 				}
 				break;
 			}
+			movesPlayed++;
 			
 			// Check for 2048 tile
 			GameBoard.checkGameOver();
 			
 			// After the move, if no 2048 tile and if the board changed, 
 			// add tile and update status
-			if (GameBoard.getStatus() && !Arrays.deepEquals(initialB, b)) {
-				GameBoard.addRandomTile();
+			int spawn = -1;
+			if (GameBoard.getStatus() && GameBoard.hasMoved()) {
+				spawn = GameBoard.addRandomTile();
 				GameBoard.checkGameOver();
 			}
+			if (rec != null && GameBoard.hasMoved()) {
+				// the commands u, d, l and r are in the order of the BitBoard directions
+				rec.move("udlr".indexOf(move), spawn);
+			}
+			if (stats != null) {
+				stats.recordMove(++moves, GameBoard.getEmptyCount());
+			}
+		}
+	}
+	
+	private static int maxTile(int[][] b) {
+		int max = 0;
+		for (int[] row : b) {
+			for (int v : row) {
+				max = Math.max(max, v);
+			}
+		}
+		return max;
+	}
+	
+	// adds the final score to the leaderboard, if there is one
+	private static void recordScore() {
+		if (leaderboardFile == null) {
+			return;
+		}
+		try {
+			if (leaderboard == null) {
+				leaderboard = Files.exists(leaderboardFile)
+						? Leaderboard.load(leaderboardFile) : new Leaderboard(10);
+			}
+			leaderboard.submit(GameBoard.getScore());
+			if (!headless) {
+				leaderboard.save(leaderboardFile);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// suggests a move on a standard board, searching for at most 200 ms
+	private static void printHint(int[][] b) {
+		if (!normal) {
+			System.out.print("Hints are only available on the standard board: ");
+			return;
+		}
+		if (hints == null) {
+			hints = new Expectimax(Evaluator.DEFAULT, rules, ForkJoinPool.commonPool());
+		}
+		int dir = hints.bestMove(BitBoard.pack(b), 8, 200_000_000L);
+		String[] names = {"u", "d", "l", "r"};
+		System.out.print("Hint: " + (dir < 0 ? "no moves left" : names[dir]) + ". Enter move: ");
+	}
+	
+	private static void newLine() {
+		if (!headless) {
+			System.out.println();
+		}
+	}
+	
+	private static void invalidChoice() {
+		if (!headless) {
+			System.out.print("Invalid choice, try again: ");
 		}
 	}
 
@@ -5,9 +5,59 @@
  * Description: Used to initialize the controller for 2048
  */
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 public class Demo {
 
-	public static  void main(String[] args) {
-		Controller.init();
+	private static final String USAGE = "Usage: java Demo [-batch <file>] [-size <rows> <cols>] [-seed <n>]\n"
+			+ "                 [-target <tile>] [-keep] [-four <chance>] [-leaderboard <file>]\n"
+			+ "                 [-stats] [-record <file>]";
+
+	public static  void main(String[] args) throws IOException {
+		String batch = null;
+		int rows = 4, cols = 4;
+		long seed = 0;
+		int target = Rules.STANDARD.getWinTile();
+		boolean keep = Rules.STANDARD.keepPlaying();
+		double four = Rules.STANDARD.getFourChance();
+
+		try {
+			for (int i=0; i<args.length; i++) {
+				switch (args[i]) {
+					case "-batch":  batch = args[++i]; break;
+					case "-size":   rows = Integer.parseInt(args[++i]);
+					                cols = Integer.parseInt(args[++i]); break;
+					case "-seed":   seed = Long.parseLong(args[++i]); break;
+					case "-target": target = Integer.parseInt(args[++i]); break;
+					case "-keep":   keep = true; break;
+					case "-four":   four = Double.parseDouble(args[++i]); break;
+					case "-leaderboard": Controller.setLeaderboard(Paths.get(args[++i])); break;
+					case "-stats":  Controller.enableStats(); break;
+					case "-record": Controller.setRecording(Paths.get(args[++i])); break;
+					default:        throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}
+			if (rows < 4 || cols < 4) {
+				throw new IllegalArgumentException("The board must have at least 4 rows and columns");
+			}
+			Controller.setRules(new Rules(target, keep, four));
+		}
+		catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		if (batch != null) {
+			Controller.runBatch(batch, rows, cols, seed);
+		}
+		else {
+			Controller.init();
+		}
 	}
-}
\ No newline at end of file
+}
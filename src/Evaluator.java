@@ -0,0 +1,168 @@
+/**
+ * @file Evaluator.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a class for scoring board positions
+ * @date Apr. 12th, 2021
+ */
+
+/**
+ * @brief A heuristic evaluation of board positions, used by computer players
+ * @details A board is scored line by line, once for each row and once for each column.
+ * Each line is scored on its empty cells, the merges available in it, how
+ * monotonic and how smooth it is, and whether its largest tile sits at one of
+ * its ends (corner weight). The weights are fixed when the evaluator is
+ * constructed. For a standard 4x4 board, every possible 16 bit row is scored
+ * in advance, so a packed board is evaluated with 8 table lookups. Boards of
+ * other sizes are scored line by line using the same formula.
+ */
+public class Evaluator {
+
+	/**
+	 * @brief An evaluator with weights that work well for expectimax search
+	 */
+	public static final Evaluator DEFAULT = new Evaluator(270, 700, 47, 11, 20);
+
+	// power applied to exponents when measuring monotonicity
+	private static final double MONO_POWER = 4;
+
+	private final double wEmpty, wMerge, wMono, wSmooth, wCorner;
+
+	// score of every possible packed row of a 4x4 board
+	private final float[] rowScores;
+
+	/**
+	 * @brief Constructs an evaluator with the given weights
+	 * @param wEmpty Weight of each empty cell
+	 * @param wMerge Weight of each pair of equal neighbouring tiles
+	 * @param wMono Weight of the penalty for lines that are not monotonic
+	 * @param wSmooth Weight of the penalty for differences between neighbouring tiles
+	 * @param wCorner Weight of the largest tile in a line being at one of its ends
+	 */
+	public Evaluator(double wEmpty, double wMerge, double wMono, double wSmooth, double wCorner) {
+		this.wEmpty = wEmpty;
+		this.wMerge = wMerge;
+		this.wMono = wMono;
+		this.wSmooth = wSmooth;
+		this.wCorner = wCorner;
+
+		rowScores = new float[1 << 16];
+		int[] line = new int[4];
+		for (int row=0; row<(1 << 16); row++) {
+			for (int c=0; c<4; c++) {
+				line[c] = (row >>> (4*c)) & 0xF;
+			}
+			rowScores[row] = lineScore(line, 4);
+		}
+	}
+
+	/**
+	 * @brief Evaluates a packed 4x4 board
+	 * @param b The packed board
+	 * @return Score of the board, where higher is better
+	 */
+	public float evaluate(long b) {
+		long t = BitBoard.transpose(b);
+		float[] s = rowScores;
+		return s[(int) b & 0xFFFF] + s[(int) (b >>> 16) & 0xFFFF]
+				+ s[(int) (b >>> 32) & 0xFFFF] + s[(int) (b >>> 48) & 0xFFFF]
+				+ s[(int) t & 0xFFFF] + s[(int) (t >>> 16) & 0xFFFF]
+				+ s[(int) (t >>> 32) & 0xFFFF] + s[(int) (t >>> 48) & 0xFFFF];
+	}
+
+	/**
+	 * @brief Evaluates a board of any size
+	 * @details 4x4 boards are packed and scored from the table. Boards of any
+	 * other size are scored line by line.
+	 * @param b 2D array of integers representing tile values
+	 * @return Score of the board, where higher is better
+	 */
+	public float evaluate(int[][] b) {
+		if (b.length == 4 && b[0].length == 4) {
+			return evaluate(BitBoard.pack(b));
+		}
+		return evaluateLines(b);
+	}
+
+	/**
+	 * @brief Evaluates the current GameBoard
+	 * @return Score of the board, where higher is better
+	 */
+	public float evaluate() {
+		return evaluate(GameBoard.getBoard());
+	}
+
+	/**
+	 * @brief Evaluates a board of any size without using the table
+	 * @details Each row, and then each column, is converted to exponents and
+	 * scored. For 4x4 boards this gives the same result as the table.
+	 * @param b 2D array of integers representing tile values
+	 * @return Score of the board, where higher is better
+	 */
+	public float evaluateLines(int[][] b) {
+		int rows = b.length;
+		int cols = b[0].length;
+		int[] line = new int[Math.max(rows, cols)];
+		float total = 0;
+
+		for (int r=0; r<rows; r++) {
+			for (int c=0; c<cols; c++) {
+				line[c] = BitBoard.exponent(b[r][c]);
+			}
+			total += lineScore(line, cols);
+		}
+		for (int c=0; c<cols; c++) {
+			for (int r=0; r<rows; r++) {
+				line[r] = BitBoard.exponent(b[r][c]);
+			}
+			total += lineScore(line, rows);
+		}
+		return total;
+	}
+
+	// scores a single line of exponents, which is the same in either direction
+	private float lineScore(int[] line, int len) {
+		int empty = 0;
+		int merges = 0;
+		int max = 0;
+		double monoLeft = 0, monoRight = 0, smooth = 0;
+
+		int prev = 0;
+		for (int i=0; i<len; i++) {
+			int e = line[i];
+			if (e == 0) {
+				empty++;
+				continue;
+			}
+			max = Math.max(max, e);
+			// equal tiles separated only by empty cells can be merged
+			if (e == prev) {
+				merges++;
+			}
+			prev = e;
+		}
+
+		for (int i=1; i<len; i++) {
+			int a = line[i-1];
+			int b = line[i];
+			double pa = Math.pow(a, MONO_POWER);
+			double pb = Math.pow(b, MONO_POWER);
+			if (a > b) {
+				monoLeft += pa - pb;
+			}
+			else {
+				monoRight += pb - pa;
+			}
+			if (a != 0 && b != 0) {
+				smooth += Math.abs(a - b);
+			}
+		}
+
+		boolean corner = max > 0 && (line[0] == max || line[len-1] == max);
+
+		return (float) (wEmpty * empty
+				+ wMerge * merges
+				- wMono * Math.min(monoLeft, monoRight)
+				- wSmooth * smooth
+				+ (corner ? wCorner * max : 0));
+	}
+}
@@ -0,0 +1,326 @@
+/**
+ * @file Expectimax.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a parallel expectimax search for 4x4 boards
+ * @date Apr. 12th, 2021
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @brief An expectimax search that chooses the best move for a packed 4x4 board
+ * @details Player nodes take the best of the four moves. Chance nodes average
+ * over every empty cell receiving a 2 or a 4, weighted by the chance given in the rules.
+ * Leaves are scored with an Evaluator. The moves at the root, and the chance
+ * nodes near the root, are split into fork-join tasks so that idle threads steal
+ * work from busy ones. Chance node results are shared between threads through a
+ * lock-striped transposition table. Searches can be given a time budget, in which
+ * case the depth is increased one ply at a time until the deadline passes, and
+ * the move from the deepest completed search is returned.
+ */
+public class Expectimax {
+
+	// value of a board with no moves left
+	private static final double DEAD = -1e9;
+
+	// chance nodes less likely than this are scored with the evaluator instead
+	private static final double MIN_PROBABILITY = 1e-4;
+
+	// chance nodes with at least this many plies below them are split into tasks
+	private static final int SPLIT_DEPTH = 3;
+
+	private final Evaluator eval;
+	private final ForkJoinPool pool;
+	private final double fourChance;
+	private final TranspositionTable table;
+
+	// set when a search runs past its deadline, so all of its tasks stop early
+	private volatile boolean aborted;
+	private long deadline;
+
+	/**
+	 * @brief Constructs a search with the standard rules on the common pool
+	 * @param eval Evaluator for the leaves of the search
+	 */
+	public Expectimax(Evaluator eval) {
+		this(eval, Rules.STANDARD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @brief Constructs a search
+	 * @param eval Evaluator for the leaves of the search
+	 * @param rules Rules giving the chance of a new tile being a 4
+	 * @param pool Pool of threads to run the search on
+	 */
+	public Expectimax(Evaluator eval, Rules rules, ForkJoinPool pool) {
+		this.eval = eval;
+		this.pool = pool;
+		this.fourChance = rules.getFourChance();
+		this.table = new TranspositionTable(1 << 20, 64);
+	}
+
+	/**
+	 * @brief Finds the best move by searching to a fixed depth
+	 * @param board The packed board
+	 * @param depth Number of moves to look ahead, at least 1
+	 * @return The best direction (BitBoard.UP, DOWN, LEFT or RIGHT),
+	 * or -1 if no move changes the board
+	 */
+	public int bestMove(long board, int depth) {
+		aborted = false;
+		deadline = Long.MAX_VALUE;
+		table.clear();
+		return search(board, depth);
+	}
+
+	/**
+	 * @brief Finds the best move found within a time budget
+	 * @details Searches one ply deeper at a time, until the budget runs out or
+	 * the maximum depth is reached. Depth 1 is always finished, however small
+	 * the budget, so there is always a searched move to return.
+	 * @param board The packed board
+	 * @param maxDepth Maximum number of moves to look ahead
+	 * @param budgetNanos Time budget in nanoseconds
+	 * @return The best direction found, or -1 if no move changes the board
+	 */
+	public int bestMove(long board, int maxDepth, long budgetNanos) {
+		long end = System.nanoTime() + budgetNanos;
+		aborted = false;
+		table.clear();
+
+		// depth 1 only scores the boards after each move and new tile, so it
+		// runs without a deadline
+		deadline = Long.MAX_VALUE;
+		int best = search(board, 1);
+		deadline = end;
+		for (int depth=2; depth<=maxDepth; depth++) {
+			int move = search(board, depth);
+			if (aborted) {
+				break;
+			}
+			best = move;
+		}
+		return best;
+	}
+
+	private int search(long board, int depth) {
+		MoveTask[] tasks = new MoveTask[4];
+		int n = 0;
+		for (int dir=0; dir<4; dir++) {
+			long next = BitBoard.move(board, dir);
+			if (next != board) {
+				tasks[dir] = new MoveTask(next, depth - 1);
+				n++;
+			}
+		}
+		RecursiveAction[] moves = new RecursiveAction[n];
+		n = 0;
+		for (MoveTask t : tasks) {
+			if (t != null) {
+				moves[n++] = t;
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(moves);
+			}
+		});
+
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int dir=0; dir<4; dir++) {
+			if (tasks[dir] != null && tasks[dir].value > bestValue) {
+				bestValue = tasks[dir].value;
+				best = dir;
+			}
+		}
+		return best;
+	}
+
+	// a move from the root, which is followed by a chance node
+	private class MoveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final long board;
+		final int depth;
+		double value;
+
+		MoveTask(long board, int depth) {
+			this.board = board;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			value = chance(board, depth, 1.0);
+		}
+	}
+
+	// a single spawn below a chance node, run as its own task
+	private class SpawnTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final long board;
+		final int depth;
+		final double prob;
+		double value;
+
+		SpawnTask(long board, int depth, double prob) {
+			this.board = board;
+			this.depth = depth;
+			this.prob = prob;
+		}
+
+		@Override
+		protected void compute() {
+			value = player(board, depth, prob);
+		}
+	}
+
+	// expected value of a board just after a move, before a tile is added
+	private double chance(long board, int depth, double prob) {
+		if (depth <= 0 || prob < MIN_PROBABILITY || checkDeadline()) {
+			return eval.evaluate(board);
+		}
+		double cached = table.get(board, depth);
+		if (!Double.isNaN(cached)) {
+			return cached;
+		}
+
+		int empty = BitBoard.countEmpty(board);
+		double p2 = (1 - fourChance) / empty;
+		double p4 = fourChance / empty;
+		double total = 0;
+
+		if (depth >= SPLIT_DEPTH) {
+			// split into one task for each tile that could be added
+			SpawnTask[] tasks = new SpawnTask[2*empty];
+			int n = 0;
+			for (int i=0; i<16; i++) {
+				if (((board >>> (4*i)) & 0xF) == 0) {
+					tasks[n++] = new SpawnTask(board | (1L << (4*i)), depth, prob * p2);
+					tasks[n++] = new SpawnTask(board | (2L << (4*i)), depth, prob * p4);
+				}
+			}
+			RecursiveAction.invokeAll(tasks);
+			for (int i=0; i<n; i += 2) {
+				total += p2 * tasks[i].value + p4 * tasks[i+1].value;
+			}
+		}
+		else {
+			for (int i=0; i<16; i++) {
+				if (((board >>> (4*i)) & 0xF) == 0) {
+					total += p2 * player(board | (1L << (4*i)), depth, prob * p2);
+					total += p4 * player(board | (2L << (4*i)), depth, prob * p4);
+				}
+			}
+		}
+
+		if (!aborted) {
+			table.put(board, depth, total);
+		}
+		return total;
+	}
+
+	// value of the best move from a board
+	private double player(long board, int depth, double prob) {
+		double best = DEAD;
+		for (int dir=0; dir<4; dir++) {
+			long next = BitBoard.move(board, dir);
+			if (next != board) {
+				best = Math.max(best, chance(next, depth - 1, prob));
+			}
+		}
+		return best;
+	}
+
+	private boolean checkDeadline() {
+		if (!aborted && deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+			aborted = true;
+		}
+		return aborted;
+	}
+
+	/**
+	 * @brief A fixed size hash table of chance node values, shared by all threads
+	 * @details Each slot holds a board, the depth it was searched to and its
+	 * value. Slots are guarded by one of a fixed number of locks, chosen
+	 * by slot index, so threads only wait on each other when they touch
+	 * slots guarded by the same lock. A new entry always replaces the old one.
+	 * Entries are stamped with the search that stored them, so clearing the
+	 * table between searches is free.
+	 */
+	static class TranspositionTable {
+		private final long[] boards;
+		private final int[] depths;
+		private final int[] stamps;
+		private final double[] values;
+		private final Object[] locks;
+		private final int mask;
+		private int stamp = 1;
+
+		/**
+		 * @brief Constructs an empty table
+		 * @param size Number of slots, a power of 2
+		 * @param stripes Number of locks, a power of 2
+		 */
+		TranspositionTable(int size, int stripes) {
+			boards = new long[size];
+			depths = new int[size];
+			stamps = new int[size];
+			values = new double[size];
+			locks = new Object[stripes];
+			for (int i=0; i<stripes; i++) {
+				locks[i] = new Object();
+			}
+			mask = size - 1;
+		}
+
+		/**
+		 * @brief Gets the value of a board searched to at least the given depth
+		 * @return The value, or NaN if there is none
+		 */
+		double get(long board, int depth) {
+			int i = index(board);
+			synchronized (locks[i & (locks.length - 1)]) {
+				if (boards[i] == board && stamps[i] == stamp && depths[i] >= depth) {
+					return values[i];
+				}
+			}
+			return Double.NaN;
+		}
+
+		/**
+		 * @brief Stores the value of a board searched to the given depth
+		 */
+		void put(long board, int depth, double value) {
+			int i = index(board);
+			synchronized (locks[i & (locks.length - 1)]) {
+				boards[i] = board;
+				depths[i] = depth;
+				stamps[i] = stamp;
+				values[i] = value;
+			}
+		}
+
+		/**
+		 * @brief Removes all entries
+		 */
+		void clear() {
+			stamp++;
+			if (stamp == 0) {
+				// the stamp wrapped around, so old entries could match again
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+		}
+
+		private int index(long board) {
+			long h = board * 0x9E3779B97F4A7C15L;
+			return (int) (h >>> 40) & mask;
+		}
+	}
+}
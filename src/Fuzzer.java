@@ -0,0 +1,502 @@
+/**
+ * @file Fuzzer.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a differential fuzzer for move engines
+ * @date Apr. 12th, 2021
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @brief Checks faster move engines against the reference rules in GameBoard
+ * @details Random and adversarial boards are generated, and every direction is
+ * applied through both the reference (GameBoard.shiftUp(int[][]) and so on) and
+ * the engine under test. The resulting boards, the score gained and whether
+ * the game is over afterwards must all match. Workers run on several threads
+ * and stop at the first mismatch, which is then shrunk to a minimal board by
+ * removing and lowering tiles for as long as the mismatch remains.
+ */
+public class Fuzzer {
+
+	/**
+	 * @brief A move engine to be checked against the reference
+	 */
+	public interface Engine {
+		/**
+		 * @brief Gets the name of the engine, for reports
+		 * @return Name of the engine
+		 */
+		String name();
+
+		/**
+		 * @brief Gets whether the engine can hold a board of the given size
+		 * @return True if the size is supported
+		 */
+		boolean supports(int rows, int cols);
+
+		/**
+		 * @brief Gets the largest tile exponent the engine can merge correctly
+		 * @return The largest exponent
+		 */
+		int maxExponent();
+
+		/**
+		 * @brief Applies a move to a board
+		 * @param b 2D array of integers representing the board, which is updated in place
+		 * @param dir Direction to move in (BitBoard.UP, DOWN, LEFT or RIGHT)
+		 * @return Total value of the merged tiles
+		 */
+		long move(int[][] b, int dir);
+
+		/**
+		 * @brief Gets whether any move is possible
+		 * @param b 2D array of integers representing the board
+		 * @return True if a move is possible, False if the game is over
+		 */
+		boolean canMove(int[][] b);
+	}
+
+	/**
+	 * @brief The packed 4x4 engine in BitBoard
+	 */
+	public static final Engine BITBOARD = new Engine() {
+		public String name() {
+			return "bitboard";
+		}
+
+		public boolean supports(int rows, int cols) {
+			return rows == 4 && cols == 4;
+		}
+
+		public int maxExponent() {
+			// two 32768 tiles cannot be merged in 4 bits
+			return 14;
+		}
+
+		public long move(int[][] b, int dir) {
+			long p = BitBoard.pack(b);
+			int gained = BitBoard.moveScore(p, dir);
+			BitBoard.unpack(BitBoard.move(p, dir), b);
+			return gained;
+		}
+
+		public boolean canMove(int[][] b) {
+			return BitBoard.canMove(BitBoard.pack(b));
+		}
+	};
+
+	/**
+	 * @brief The block tiled engine in TiledBoard, for boards of any size
+	 */
+	public static final Engine TILED = new Engine() {
+		public String name() {
+			return "tiled";
+		}
+
+		public boolean supports(int rows, int cols) {
+			return true;
+		}
+
+		public int maxExponent() {
+			// the reference adds up the score in an int, so keep the
+			// total of a move on a large board from overflowing
+			return 16;
+		}
+
+		public long move(int[][] b, int dir) {
+			TiledBoard t = new TiledBoard(b);
+			long gained = t.move(dir);
+			t.copyTo(b);
+			return gained;
+		}
+
+		public boolean canMove(int[][] b) {
+			return new TiledBoard(b).canMove();
+		}
+	};
+
+	/**
+	 * @brief The tile list engine in SparseBoard, kept sparse even on full boards
+	 */
+	public static final Engine SPARSE = new Engine() {
+		public String name() {
+			return "sparse";
+		}
+
+		public boolean supports(int rows, int cols) {
+			return true;
+		}
+
+		public int maxExponent() {
+			return TILED.maxExponent();
+		}
+
+		public long move(int[][] b, int dir) {
+			SparseBoard s = new SparseBoard(b, 1);
+			long gained = s.move(dir);
+			s.copyTo(b);
+			return gained;
+		}
+
+		public boolean canMove(int[][] b) {
+			return new SparseBoard(b, 1).canMove();
+		}
+	};
+
+	/**
+	 * @brief The byte exponent board behind GameBoard's own shift methods
+	 * @details GameBoard is static, so calls are made one thread at a time
+	 */
+	public static final Engine GAMEBOARD = new Engine() {
+		private final Rules rules = new Rules(2048, true, 0.1);
+
+		public String name() {
+			return "gameboard";
+		}
+
+		public boolean supports(int rows, int cols) {
+			return true;
+		}
+
+		public int maxExponent() {
+			return TILED.maxExponent();
+		}
+
+		public long move(int[][] b, int dir) {
+			synchronized (GameBoard.class) {
+				GameBoard.init(b, rules);
+				switch (dir) {
+					case BitBoard.UP: GameBoard.shiftUp(); break;
+					case BitBoard.DOWN: GameBoard.shiftDown(); break;
+					case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				int[][] moved = GameBoard.getBoard();
+				for (int i=0; i<b.length; i++) {
+					System.arraycopy(moved[i], 0, b[i], 0, b[i].length);
+				}
+				return GameBoard.getScore();
+			}
+		}
+
+		public boolean canMove(int[][] b) {
+			synchronized (GameBoard.class) {
+				// the rules play on past 2048, so only a stuck board ends the game
+				GameBoard.init(b, rules);
+				GameBoard.checkGameOver();
+				return GameBoard.getStatus();
+			}
+		}
+	};
+
+	/**
+	 * @brief A mismatch between the reference and an engine
+	 */
+	public static class Failure {
+		final int[][] board;
+		final int dir;
+		final String reason;
+
+		Failure(int[][] board, int dir, String reason) {
+			this.board = board;
+			this.dir = dir;
+			this.reason = reason;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(reason).append(" moving ").append("UDLR".charAt(dir)).append(" from:\n");
+			for (int[] row : board) {
+				for (int v : row) {
+					sb.append(String.format("%6d", v));
+				}
+				sb.append('\n');
+			}
+			return sb.toString();
+		}
+	}
+
+	private final Engine engine;
+	private final int rows, cols;
+
+	/**
+	 * @brief Constructs a fuzzer for an engine and board size
+	 * @param engine Engine to check
+	 * @param rows Integer representing the number of rows in each board
+	 * @param cols Integer representing the number of columns in each board
+	 * @throws IllegalArgumentException If the engine does not support the size
+	 */
+	public Fuzzer(Engine engine, int rows, int cols) {
+		if (!engine.supports(rows, cols)) {
+			throw new IllegalArgumentException(engine.name() + " does not support " + rows + "x" + cols);
+		}
+		this.engine = engine;
+		this.rows = rows;
+		this.cols = cols;
+	}
+
+	/**
+	 * @brief Checks boards on several threads until time runs out or a mismatch is found
+	 * @param threads Number of threads
+	 * @param nanos Time to run for, in nanoseconds
+	 * @param seed Seed for the generated boards
+	 * @param checked Counter which is increased by the number of boards checked
+	 * @return The shrunk mismatch or exception, or null if none was found
+	 */
+	public Failure run(int threads, long nanos, long seed, AtomicLong checked) {
+		long deadline = System.nanoTime() + nanos;
+		AtomicReference<Failure> found = new AtomicReference<>();
+		SplittableRandom root = new SplittableRandom(seed);
+		List<Thread> workers = new ArrayList<>();
+		for (int t=0; t<threads; t++) {
+			SplittableRandom rand = root.split();
+			Thread w = new Thread(() -> {
+				int[][] b = new int[rows][cols];
+				int[][] ref = new int[rows][cols];
+				int[][] out = new int[rows][cols];
+				long count = 0;
+				try {
+					while (found.get() == null) {
+						generate(b, rand);
+						Failure f = check(b, ref, out);
+						count++;
+						if (f != null) {
+							found.compareAndSet(null, f);
+						}
+						// only look at the clock now and then
+						if ((count & 1023) == 0) {
+							checked.addAndGet(1024);
+							if (System.nanoTime() > deadline) {
+								break;
+							}
+						}
+					}
+				}
+				catch (Throwable e) {
+					// anything check does not catch is a bug in the fuzzer, which must not pass silently
+					found.compareAndSet(null, new Failure(copyOf(b), 0, "Fuzzer threw " + e));
+				}
+				finally {
+					checked.addAndGet(count & 1023);
+				}
+			});
+			workers.add(w);
+			w.start();
+		}
+		for (Thread w : workers) {
+			try {
+				w.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("The fuzzer was interrupted", e);
+			}
+		}
+		Failure f = found.get();
+		return f == null ? null : shrink(f);
+	}
+
+	/**
+	 * @brief Applies every direction to a board through the reference and the engine
+	 * @details An exception thrown by the engine counts as a mismatch
+	 * @param b 2D array of integers representing the board, which is not changed
+	 * @param ref Scratch board of the same size for the reference
+	 * @param out Scratch board of the same size for the engine
+	 * @return The first mismatch, or null if the engine agrees with the reference
+	 */
+	Failure check(int[][] b, int[][] ref, int[][] out) {
+		for (int dir=0; dir<4; dir++) {
+			copy(b, ref);
+			copy(b, out);
+			long refGained = reference(ref, dir);
+			long gained;
+			boolean canMove;
+			try {
+				gained = engine.move(out, dir);
+				canMove = engine.canMove(out);
+			}
+			catch (Throwable e) {
+				return new Failure(copyOf(b), dir, engine.name() + " threw " + e);
+			}
+
+			for (int i=0; i<rows; i++) {
+				for (int j=0; j<cols; j++) {
+					if (ref[i][j] != out[i][j]) {
+						return new Failure(copyOf(b), dir, "Boards differ at (" + i + ", " + j + ")");
+					}
+				}
+			}
+			if (refGained != gained) {
+				return new Failure(copyOf(b), dir, "Score gained differs (" + refGained + " vs " + gained + ")");
+			}
+			if (GameBoard.canMove(ref) != canMove) {
+				return new Failure(copyOf(b), dir, "Game over status differs");
+			}
+		}
+		return null;
+	}
+
+	private static long reference(int[][] b, int dir) {
+		switch (dir) {
+			case BitBoard.UP:   return GameBoard.shiftUp(b);
+			case BitBoard.DOWN: return GameBoard.shiftDown(b);
+			case BitBoard.LEFT: return GameBoard.shiftLeft(b);
+			default:            return GameBoard.shiftRight(b);
+		}
+	}
+
+	// fills a board with one of several kinds of random or adversarial layout
+	private void generate(int[][] b, SplittableRandom rand) {
+		int maxExp = engine.maxExponent();
+		switch (rand.nextInt(5)) {
+			case 0:
+				// uniform, with a random density and a random spread of tiles
+				int density = rand.nextInt(101);
+				int spread = 1 + rand.nextInt(maxExp);
+				for (int[] row : b) {
+					for (int j=0; j<cols; j++) {
+						row[j] = rand.nextInt(100) < density ? 1 << (1 + rand.nextInt(spread)) : 0;
+					}
+				}
+				break;
+			case 1:
+				// few distinct values, so that long runs of equal tiles merge
+				for (int[] row : b) {
+					for (int j=0; j<cols; j++) {
+						int k = rand.nextInt(4);
+						row[j] = k == 0 ? 0 : 1 << k;
+					}
+				}
+				break;
+			case 2:
+				// full checkerboard with no merges, then a few cells changed
+				int x = 1 + rand.nextInt(maxExp - 1);
+				for (int i=0; i<rows; i++) {
+					for (int j=0; j<cols; j++) {
+						b[i][j] = 1 << (((i + j) & 1) == 0 ? x : x + 1);
+					}
+				}
+				for (int k=rand.nextInt(3); k>0; k--) {
+					b[rand.nextInt(rows)][rand.nextInt(cols)] = 1 << (1 + rand.nextInt(maxExp));
+				}
+				break;
+			case 3:
+				// chains like 2-2-4-8 that must only merge once per move
+				for (int[] row : b) {
+					int e = 1 + rand.nextInt(3);
+					for (int j=0; j<cols; j++) {
+						row[j] = j == 0 ? 1 << e : row[j-1] * (rand.nextInt(3) == 0 ? 1 : 2);
+						if (row[j] > 1 << maxExp) {
+							row[j] = 1 << e;
+						}
+					}
+				}
+				break;
+			default:
+				// the largest tiles the engine supports, with gaps
+				for (int[] row : b) {
+					for (int j=0; j<cols; j++) {
+						row[j] = rand.nextInt(3) == 0 ? 0 : 1 << (maxExp - rand.nextInt(2));
+					}
+				}
+				break;
+		}
+	}
+
+	/**
+	 * @brief Shrinks a mismatch to a board with as few and as small tiles as possible
+	 * @param f The mismatch
+	 * @return A mismatch on the smallest board found
+	 */
+	Failure shrink(Failure f) {
+		int[][] ref = new int[rows][cols];
+		int[][] out = new int[rows][cols];
+		int[][] b = copyOf(f.board);
+		Failure best = f;
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (int i=0; i<rows; i++) {
+				for (int j=0; j<cols; j++) {
+					int old = b[i][j];
+					if (old == 0) {
+						continue;
+					}
+					// try removing the tile, then try halving it
+					int[] candidates = old > 2 ? new int[]{0, old / 2} : new int[]{0};
+					for (int c : candidates) {
+						b[i][j] = c;
+						Failure g = check(b, ref, out);
+						if (g != null) {
+							best = g;
+							progress = true;
+							break;
+						}
+						b[i][j] = old;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	private static void copy(int[][] from, int[][] to) {
+		for (int i=0; i<from.length; i++) {
+			System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+		}
+	}
+
+	private static int[][] copyOf(int[][] b) {
+		int[][] c = new int[b.length][];
+		for (int i=0; i<b.length; i++) {
+			c[i] = b[i].clone();
+		}
+		return c;
+	}
+
+	/**
+	 * @brief Gets an engine by name
+	 * @param name Name of the engine
+	 * @return The engine
+	 * @throws IllegalArgumentException If there is no engine with that name
+	 */
+	public static Engine engine(String name) {
+		for (Engine e : new Engine[]{BITBOARD, TILED, SPARSE, GAMEBOARD}) {
+			if (e.name().equals(name)) {
+				return e;
+			}
+		}
+		throw new IllegalArgumentException("Unknown engine: " + name);
+	}
+
+	/**
+	 * @brief Runs the fuzzer from the command line
+	 * @details Usage: java Fuzzer [engine] [seconds] [threads] [rows cols]
+	 */
+	public static void main(String[] args) {
+		Engine engine = engine(args.length > 0 ? args[0] : "bitboard");
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int rows = args.length > 4 ? Integer.parseInt(args[3]) : 4;
+		int cols = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+		Fuzzer fuzzer = new Fuzzer(engine, rows, cols);
+		AtomicLong checked = new AtomicLong();
+		long start = System.nanoTime();
+		Failure f = fuzzer.run(threads, seconds * 1_000_000_000L, System.nanoTime(), checked);
+		double secs = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%s %dx%d: %,d boards (x4 directions) in %.1f s, %,.0f boards/s on %d threads%n",
+				engine.name(), rows, cols, checked.get(), secs, checked.get() / secs, threads);
+		if (f != null) {
+			System.out.println("MISMATCH: " + f);
+			System.exit(1);
+		}
+		System.out.println("No mismatches found");
+	}
+}
@@ -5,45 +5,78 @@
  * @date Apr. 12th, 2021
  */
 
-import java.util.ArrayList;
 import java.util.Random;
 
 /**
  * @brief A model representing the game board for 2048
  * @details It is assumed that one of the init methods are called
- * before any other methods.
+ * before any other methods. Tiles are stored as the log2 of their value in
+ * a byte (0 for an empty cell), in one array in row order, so a board takes
+ * a quarter of the memory of an int[][]. Values are only worked out when the
+ * board is read with getBoard or getTile, which return ints, so the largest
+ * tile supported is 2^30. The score is a long, so long games on large boards
+ * cannot overflow it.
  */
 public class GameBoard {
 	
 	// xSize and ySize correspond to the number of rows and columns, respectively
 	private static int xSize, ySize;
-	private static int[][] board;
-	private static int score;
-	private static int highScore = 0;
+	private static byte[] board;
+	private static long score;
+	private static long highScore = 0;
+	
+	// true if the last shift changed the board
+	private static boolean moved;
+	
+	// directions for shift, as in BitBoard
+	private static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
 
 	// The status is true as long as the game is not over
 	private static boolean status;
 	private static boolean has2048;
 	
+	// rules for the current game, resolved from a Rules object in init
+	private static int winTile;
+	private static int winExp;
+	private static boolean endOnWin;
+	private static double fourThreshold;
+	
+	// source of random tiles, shared across games so a seed covers a whole session
+	private static Random rand = new Random();
+	
 	/**
 	 * @brief Initializes the game board
 	 * @details Initializes an empty game board with the
-	 * specified dimensions and adds 2 start tiles
+	 * specified dimensions and adds 2 start tiles, using the standard rules
 	 * @param rows Integer representing the number of rows in the board
 	 * @param cols Integer representing the number of columns in the board
 	 * @throws IllegalArgumentException If there are fewer than 4 rows or columns
 	 */
 	public static void init(int rows, int cols) {
+		init(rows, cols, Rules.STANDARD);
+	}
+	
+	/**
+	 * @brief Initializes the game board for a game variant
+	 * @details Initializes an empty game board with the
+	 * specified dimensions and adds 2 start tiles, using the given rules
+	 * @param rows Integer representing the number of rows in the board
+	 * @param cols Integer representing the number of columns in the board
+	 * @param rules Rules for the game variant
+	 * @throws IllegalArgumentException If there are fewer than 4 rows or columns
+	 */
+	public static void init(int rows, int cols, Rules rules) {
 		if (rows < 4 || cols < 4) {
 			throw new IllegalArgumentException("The board must have at least 4 rows and columns");
 		}
 		
 		xSize = rows;
 		ySize = cols;
-		board = new int[xSize][ySize];
+		board = new byte[xSize * ySize];
 		score = 0;
 		status = true;
 		has2048 = false;
+		setRules(rules);
 		generateStartTiles();
 	}
 	
@@ -54,9 +87,25 @@ public class GameBoard {
 	 * empty array. This is used for testing purposes only.
 	 * @param b 2D array of integers representing entries to be used in the board
 	 * @throws IllegalArgumentException If one or more of the rows of the array
-	 * has a different length to the others
+	 * has a different length to the others, or a value is neither 0 nor a
+	 * power of 2 greater than 1
 	 */
 	public static void init(int[][] b) {
+		init(b, Rules.STANDARD);
+	}
+	
+	/**
+	 * @brief Initializes the game board for a game variant
+	 * @details Initializes an empty game board using the
+	 * specified array and rules. It is assumed that the input array is not 
+	 * empty array.
+	 * @param b 2D array of integers representing entries to be used in the board
+	 * @param rules Rules for the game variant
+	 * @throws IllegalArgumentException If one or more of the rows of the array
+	 * has a different length to the others, or a value is neither 0 nor a
+	 * power of 2 greater than 1
+	 */
+	public static void init(int[][] b, Rules rules) {
 		xSize = b.length;
 		ySize = b[0].length;
 	
@@ -64,18 +113,80 @@ public class GameBoard {
 			if (row.length != ySize) {
 				throw new IllegalArgumentException("One or more board columns are invalid.");
 			}
+			for (int val : row) {
+				if (val != 0 && (val < 2 || Integer.bitCount(val) != 1)) {
+					throw new IllegalArgumentException("Tiles must be powers of 2 greater than 1.");
+				}
+			}
 		}
 		
-		// Initialize game board with specified values
-		board = new int[xSize][ySize];
+		// Initialize game board with the exponents of the specified values
+		board = new byte[xSize * ySize];
 		for (int i=0; i<xSize; i++) {
 			for (int j=0; j<ySize; j++) {
-				board[i][j] = b[i][j];
+				board[i*ySize + j] = exponent(b[i][j]);
 			}
 		}
 		score = 0;
 		status = true;
 		has2048 = false;
+		setRules(rules);
+	}
+	
+	/**
+	 * @brief Initializes the game board from a saved position
+	 * @details Restores a board saved with copyExponents, along with the
+	 * score it had, so that a recorded game can carry on from that point.
+	 * The high score is raised to the score if it is lower. The status is
+	 * not checked, which can be done with checkGameOver.
+	 * @param exponents Array of bytes holding the log2 of each tile in row
+	 * order, or 0 for an empty cell
+	 * @param rows Integer representing the number of rows in the board
+	 * @param cols Integer representing the number of columns in the board
+	 * @param s Long representing the score of the saved position
+	 * @param rules Rules for the game variant
+	 * @throws IllegalArgumentException If the array does not hold rows * cols
+	 * cells, or an exponent is negative
+	 */
+	public static void init(byte[] exponents, int rows, int cols, long s, Rules rules) {
+		if (rows < 1 || cols < 1 || exponents.length != (long) rows * cols) {
+			throw new IllegalArgumentException("The saved board does not have " + rows + "x" + cols + " cells.");
+		}
+		xSize = rows;
+		ySize = cols;
+		board = exponents.clone();
+		for (byte e : board) {
+			if (e < 0) {
+				throw new IllegalArgumentException("Tile exponents cannot be negative.");
+			}
+		}
+		score = 0;
+		updateScore(s);
+		status = true;
+		has2048 = false;
+		setRules(rules);
+	}
+	
+	/**
+	 * @brief Saves the board, so it can be restored by init
+	 * @param dst Array of bytes with room for every cell, which is given the
+	 * log2 of each tile in row order, or 0 for an empty cell
+	 */
+	public static void copyExponents(byte[] dst) {
+		System.arraycopy(board, 0, dst, 0, board.length);
+	}
+	
+	// copy the rules into fields so moves never need to consult the Rules object
+	private static void setRules(Rules rules) {
+		winTile = rules.getWinTile();
+		winExp = exponent(winTile);
+		endOnWin = !rules.keepPlaying();
+		fourThreshold = 1 - rules.getFourChance();
+	}
+	
+	// the log2 of a tile value, or 0 for an empty cell
+	private static byte exponent(int val) {
+		return val == 0 ? 0 : (byte) (31 - Integer.numberOfLeadingZeros(val));
 	}
 	
 	private static void generateStartTiles() {
@@ -86,85 +197,208 @@ public class GameBoard {
 	/**
 	 * @brief Changes an empty cell of the board to a 2 or a 4
 	 * @details It is assumed that this will never be called if there are
-	 * no empty cells remaining in the board
+	 * no empty cells remaining in the board. Empty cells are counted in row
+	 * order, and the cell is found by walking to the chosen one, so nothing
+	 * is allocated.
+	 * @return Integer representing the cell the tile was added to, as
+	 * row * cols + col
 	 */
-	public static void addRandomTile() {
-		Random rand = new Random();
-		int[][] emptyCells = getEmptyCells();
-		
+	public static int addRandomTile() {
+		return spawn(board, rand, fourThreshold);
+	}
+	
+	/**
+	 * @brief Adds a random tile to a board other than the game board
+	 * @details Chooses the cell and the tile exactly as addRandomTile does,
+	 * so a Random in the same state adds the same tile. This does not change
+	 * the game board, so each thread can use it with a board and Random of
+	 * its own.
+	 * @param cells Array of bytes holding a board in the format of copyExponents
+	 * @param r Random number generator to draw from
+	 * @param rules Rules giving the chance of the tile being a 4
+	 * @return Integer representing the cell the tile was added to, or -1 if
+	 * the board has no empty cell
+	 */
+	public static int spawn(byte[] cells, Random r, Rules rules) {
+		return spawn(cells, r, 1 - rules.getFourChance());
+	}
+	
+	private static int spawn(byte[] cells, Random r, double fourAbove) {
+		int free = countEmpty(cells);
+		if (free == 0) {
+			return -1;
+		}
 		// choose a random empty cell index
-		int r = (int) (rand.nextDouble()*(emptyCells.length));
+		int k = (int) (r.nextDouble()*free);
 		
-		// get board positions from the random empty cell
-		int x = emptyCells[r][0];
-		int y = emptyCells[r][1];
+		// find the board position of the random empty cell
+		int cell = 0;
+		while (cells[cell] != 0 || k-- > 0) {
+			cell++;
+		}
 		
 		// add a tile to the board with value 2 or 4
-		// (currently 10% chance to get a 4 instead of 2)
-		board[x][y] = (int) (rand.nextDouble()*10) == 9 ? 4 : 2;
+		// (10% chance to get a 4 instead of 2 under the standard rules)
+		cells[cell] = (byte) (r.nextDouble() >= fourAbove ? 2 : 1);
+		return cell;
 	}
 	
-	private static int[][] getEmptyCells() {
-		ArrayList<int[]> a = new ArrayList<>();
-		for (int i=0; i<xSize; i++) {
-			for (int j=0; j<ySize; j++) {
-				if (board[i][j] == 0) {
-					a.add(new int[]{i,j});
-				}
+	private static int countEmpty(byte[] cells) {
+		int free = 0;
+		for (byte e : cells) {
+			if (e == 0) {
+				free++;
 			}
 		}
-		int[][] emptyCells = new int[a.size()][2];
-		int c=0;
-		for (int[] cell : a) {
-			emptyCells[c] = cell;
-			c++;
+		return free;
+	}
+	
+	/**
+	 * @brief Adds a given tile to an empty cell
+	 * @details Places a tile that addRandomTile added in a recorded game,
+	 * so that the game can be played again without the random number generator
+	 * @param x Integer representing the row of the cell
+	 * @param y Integer representing the column of the cell
+	 * @param val Integer representing the value of the tile
+	 * @throws IllegalArgumentException If the cell is not empty, or the value is
+	 * not a power of 2 greater than 1
+	 */
+	public static void placeTile(int x, int y, int val) {
+		if (board[x*ySize + y] != 0) {
+			throw new IllegalArgumentException("The cell is not empty.");
+		}
+		if (val < 2 || Integer.bitCount(val) != 1) {
+			throw new IllegalArgumentException("Tiles must be powers of 2 greater than 1.");
 		}
-		return emptyCells;
+		board[x*ySize + y] = exponent(val);
+	}
+	
+	/**
+	 * @brief Gets the value of one cell of the board
+	 * @param x Integer representing the row of the cell
+	 * @param y Integer representing the column of the cell
+	 * @return Integer representing the value of the tile, or 0 if the cell is empty
+	 */
+	public static int getTile(int x, int y) {
+		int e = board[x*ySize + y];
+		return e == 0 ? 0 : 1 << e;
+	}
+	
+	/**
+	 * @brief Gets the number of rows in the board
+	 * @return Integer representing the number of rows
+	 */
+	public static int getRows() {
+		return xSize;
+	}
+	
+	/**
+	 * @brief Gets the number of columns in the board
+	 * @return Integer representing the number of columns
+	 */
+	public static int getCols() {
+		return ySize;
+	}
+	
+	/**
+	 * @brief Gets the number of empty cells on the board
+	 * @return Integer representing the number of empty cells
+	 */
+	public static int getEmptyCount() {
+		return countEmpty(board);
+	}
+	
+	/**
+	 * @brief Seeds the random number generator used for new tiles
+	 * @details Games started after this call place the same random tiles
+	 * for the same sequence of moves, which allows scripted games to be repeated
+	 * @param seed Long representing the seed
+	 */
+	public static void setSeed(long seed) {
+		rand = new Random(seed);
 	}
 	
 	/**
 	 * @brief Changes the status based on the current board
 	 * @details The status is used by the controller to determine when
-	 * the game is over. If a cell contains the value 2048, then the 
-	 * status is changed to false to indicate game over. The game is also
+	 * the game is over. If a cell contains the winning tile (2048 under the
+	 * standard rules), then the status is changed to false to indicate game
+	 * over, unless the rules allow playing on after a win. The game is also
 	 * over if there are no empty cells and no possible merges.
 	 */
 	public static void checkGameOver() {
 		
-		// first check if there is a 2048, to end the game
-		for (int[] row : board) {
-			for (int val : row) {
-				if (val == 2048) {
+		// first check if there is a winning tile, which ends the game
+		// (once found there is no need to look again)
+		if (!has2048) {
+			for (byte e : board) {
+				if (e == winExp) {
 					has2048 = true;
-					status = false;
-					return;
+					if (endOnWin) {
+						status = false;
+						return;
+					}
+					break;
 				}
 			}
 		}
 		
-		int[][] e = getEmptyCells();
-		// no empty cells, game might be over
-		if (e.length == 0) {
-			boolean flag = false;
-			for (int i=0; i<xSize; i++) {
-				for (int j=0; j<ySize; j++) {
-					//check all 4 directions if possible for duplicates
-					if ((i>0 && board[i-1][j] == board[i][j]) ||
-						(i<xSize-1 && board[i+1][j] == board[i][j]) ||
-						(j>0 && board[i][j-1] == board[i][j]) ||
-						(j<ySize-1 && board[i][j+1] == board[i][j])) {
-						flag = true;
-						break;
-					}
+		// game over if board is full and no possible merge was found
+		if (!canMove(board, xSize, ySize)) {
+			status = false;
+		}
+	}
+	
+	/**
+	 * @brief Gets whether any move is possible on a board other than the game board
+	 * @details The same check as canMove(int[][]), on the exponents of a board
+	 * @param b Array of bytes holding a board in the format of copyExponents
+	 * @param rows Integer representing the number of rows in the board
+	 * @param cols Integer representing the number of columns in the board
+	 * @return True if a move is possible, False otherwise
+	 */
+	public static boolean canMove(byte[] b, int rows, int cols) {
+		for (int i=0; i<rows; i++) {
+			for (int j=0; j<cols; j++) {
+				int c = i*cols + j;
+				if (b[c] == 0 ||
+					(i<rows-1 && b[c+cols] == b[c]) ||
+					(j<cols-1 && b[c+1] == b[c])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @brief Gets whether any move is possible on a given board
+	 * @details A move is possible if there is an empty cell, or if two
+	 * adjacent cells have the same value. This does not change the game board.
+	 * @param b 2D array of integers representing a board
+	 * @return True if a move is possible, False otherwise
+	 */
+	public static boolean canMove(int[][] b) {
+		int rows = b.length, cols = b[0].length;
+		for (int i=0; i<rows; i++) {
+			for (int j=0; j<cols; j++) {
+				if (b[i][j] == 0) {
+					return true;
 				}
-				if (flag)
-					break;
 			}
-			// game over if board is full and no possible merge was found
-			if (!flag) {
-				status = false;
+		}
+		for (int i=0; i<rows; i++) {
+			for (int j=0; j<cols; j++) {
+				//check all 4 directions if possible for duplicates
+				if ((i>0 && b[i-1][j] == b[i][j]) ||
+					(i<rows-1 && b[i+1][j] == b[i][j]) ||
+					(j>0 && b[i][j-1] == b[i][j]) ||
+					(j<cols-1 && b[i][j+1] == b[i][j])) {
+					return true;
+				}
 			}
 		}
+		return false;
 	}
 	
 	/**
@@ -189,26 +423,47 @@ public class GameBoard {
 	
 	/**
 	 * @brief Gets the current game board
+	 * @details The tile values are worked out from the stored exponents into
+	 * a new array, so later moves do not change it. Tiles above 2^30 do not
+	 * fit in an int and are not supported here.
 	 * @return 2D array of integers, representing
 	 * the positions of tiles and empty cells on the board
 	 */
 	public static int[][] getBoard() {
-		return board;
+		int[][] b = new int[xSize][ySize];
+		for (int i=0; i<xSize; i++) {
+			for (int j=0; j<ySize; j++) {
+				int e = board[i*ySize + j];
+				b[i][j] = e == 0 ? 0 : 1 << e;
+			}
+		}
+		return b;
+	}
+	
+	/**
+	 * @brief Gets whether the last shift changed the board
+	 * @details A shift that moves or merges no tiles is not a turn, and no
+	 * new tile should be added after it
+	 * @return True if the last shift moved or merged at least one tile,
+	 * False otherwise
+	 */
+	public static boolean hasMoved() {
+		return moved;
 	}
 	
 	/**
 	 * @brief Gets the current game score
-	 * @return Integer representing the game score
+	 * @return Long representing the game score
 	 */
-	public static int getScore() {
+	public static long getScore() {
 		return score;
 	}
 	
 	/**
 	 * @brief Gets the high score across all games
-	 * @return Integer representing the high score
+	 * @return Long representing the high score
 	 */
-	public static int getHighScore() {
+	public static long getHighScore() {
 		return highScore;
 	}
 
@@ -223,10 +478,10 @@ public class GameBoard {
 	 * @brief Updates the score and high score
 	 * @details The score is incremented by the value of the merged tile,
 	 * and the high score is updated if necessary
-	 * @param val Integer representing the value of a tile
+	 * @param val Long representing the value of a tile
 	 * that has just been merged
 	 */
-	public static void updateScore(int val) {
+	public static void updateScore(long val) {
 		score += val;
 		if (score > highScore) {
 			highScore = score;
@@ -234,13 +489,22 @@ public class GameBoard {
 	}
 	
 	/**
-	 * @brief Gets whether or not a 2048 was found in the board
-	 * @return True if a 2048 was found in the board, False otherwise
+	 * @brief Gets whether or not a winning tile was found in the board
+	 * @details The winning tile is 2048 under the standard rules
+	 * @return True if a winning tile was found in the board, False otherwise
 	 */
 	public static boolean has2048() {
 		return has2048;
 	}
 	
+	/**
+	 * @brief Gets the tile that wins the current game
+	 * @return Integer representing the winning tile
+	 */
+	public static int getWinTile() {
+		return winTile;
+	}
+	
 	/**
 	 * @brief Swaps the values of two cells in the board
 	 * @param x Integer representing the row index of the first cell to be swapped
@@ -256,10 +520,214 @@ public class GameBoard {
 			throw new IndexOutOfBoundsException("Cell index out of bounds");
 		}
 
-		int temp = board[x][y];
-		int val = board[x+xDiff][y+yDiff];
-		board[x][y] = val;
-		board[x+xDiff][y+yDiff] = temp;
+		int c = x*ySize + y, d = (x+xDiff)*ySize + y+yDiff;
+		byte temp = board[c];
+		board[c] = board[d];
+		board[d] = temp;
+	}
+	
+	// swaps two cells of a board, the same as swapCells without the bounds check
+	private static void swap(int[][] b, int x, int y, int xDiff, int yDiff) {
+		int temp = b[x][y];
+		b[x][y] = b[x+xDiff][y+yDiff];
+		b[x+xDiff][y+yDiff] = temp;
+	}
+	
+	/**
+	 * @brief Slides the tiles of a single line towards its start
+	 * @details Applies the same rules as the shift methods to a single line,
+	 * without changing the game board or the score. Tiles move towards index 0,
+	 * and two equal tiles that meet are merged, with each tile merged at most
+	 * once. This is used to build faster move engines from the same rules.
+	 * @param line Array of integers holding the tile values of the line, which
+	 * is updated in place
+	 * @param len Integer representing the number of cells in the line
+	 * @return Integer representing the total value of the merged tiles
+	 */
+	public static int slideLine(int[] line, int len) {
+		int gained = 0;
+		int next = 0; // next free position in the line
+		boolean canMerge = false; // true if the tile before next was not merged
+		for (int i=0; i<len; i++) {
+			int val = line[i];
+			if (val == 0) {
+				continue;
+			}
+			line[i] = 0;
+			if (canMerge && line[next-1] == val) {
+				line[next-1] = 2*val;
+				gained += 2*val;
+				canMerge = false;
+			}
+			else {
+				line[next] = val;
+				next++;
+				canMerge = true;
+			}
+		}
+		return gained;
+	}
+	
+	// shifts the game board, returning the total value of the merged tiles
+	private static long shift(int dir) {
+		long gained = move(board, xSize, ySize, dir);
+		moved = gained >= 0;
+		return Math.max(gained, 0);
+	}
+	
+	/**
+	 * @brief Moves the tiles of a board other than the game board
+	 * @details This is the code the shift methods run, so the rules are the
+	 * same, but it does not change the game board or the score. Nothing is
+	 * allocated, and each thread can use it with a board of its own.
+	 * @param cells Array of bytes holding a board in the format of
+	 * copyExponents, which is updated in place
+	 * @param rows Integer representing the number of rows in the board
+	 * @param cols Integer representing the number of columns in the board
+	 * @param dir Direction of the move (BitBoard.UP, DOWN, LEFT or RIGHT)
+	 * @return Long representing the total value of the merged tiles, or -1
+	 * if no tile moved
+	 */
+	public static long move(byte[] cells, int rows, int cols, int dir) {
+		long gained = 0;
+		boolean changed = false;
+		int lines = dir == UP || dir == DOWN ? cols : rows;
+		for (int k=0; k<lines; k++) {
+			long g;
+			switch (dir) {
+				case UP: g = slideCells(cells, k, cols, rows); break;
+				case DOWN: g = slideCells(cells, (rows-1)*cols + k, -cols, rows); break;
+				case LEFT: g = slideCells(cells, k*cols, 1, cols); break;
+				default: g = slideCells(cells, k*cols + cols-1, -1, cols); break;
+			}
+			if (g >= 0) {
+				gained += g;
+				changed = true;
+			}
+		}
+		return changed ? gained : -1;
+	}
+	
+	// the same as slideLine, on the exponents of a line of cells in a board
+	// in row order, from start towards start + (len-1) * step; returns the
+	// total value of the merged tiles, or -1 if no tile moved
+	private static long slideCells(byte[] b, int start, int step, int len) {
+		long gained = 0;
+		boolean changed = false;
+		int next = start; // next free cell in the line
+		boolean canMerge = false;
+		int end = start + len*step;
+		for (int i=start; i!=end; i+=step) {
+			byte e = b[i];
+			if (e == 0) {
+				continue;
+			}
+			b[i] = 0;
+			if (canMerge && b[next-step] == e) {
+				b[next-step] = (byte) (e + 1);
+				gained += 1L << (e + 1);
+				canMerge = false;
+				changed = true;
+			}
+			else {
+				b[next] = e;
+				changed |= next != i;
+				next += step;
+				canMerge = true;
+			}
+		}
+		return changed ? gained : -1;
+	}
+	
+	/**
+	 * @brief Works out the board after each of the four moves, in one pass
+	 * @details Does not change the game board, the score or hasMoved. Each
+	 * row is read once for both left and right, and each column once for
+	 * both up and down, and every cell of the four buffers is written, so
+	 * nothing needs to be copied or cleared first. Moving a line either way
+	 * merges the same pairs of values, so the two moves gain the same score.
+	 * This allocates nothing, so a search can call it at every node with
+	 * buffers of its own.
+	 * @param next Four arrays of bytes with room for every cell, indexed by
+	 * direction (as in BitBoard), which are given the board after each move
+	 * in the format of copyExponents
+	 * @param gains Array of four longs, indexed by direction, which are given
+	 * the total value of the tiles merged by each move
+	 * @return Bit mask of the moves that change the board, with bit UP,
+	 * DOWN, LEFT or RIGHT set for each
+	 */
+	public static int successors(byte[][] next, long[] gains) {
+		gains[UP] = gains[DOWN] = gains[LEFT] = gains[RIGHT] = 0;
+		int changed = 0;
+		for (int i=0; i<xSize; i++) {
+			changed |= slideBoth(next, gains, i*ySize, 1, ySize, LEFT, RIGHT);
+		}
+		for (int j=0; j<ySize; j++) {
+			changed |= slideBoth(next, gains, j, ySize, xSize, UP, DOWN);
+		}
+		return changed;
+	}
+	
+	// slides one line of the game board towards its start into next[toStart]
+	// and towards its end into next[toEnd], reading each cell once; the tiles
+	// are packed into the start of next[toEnd] on the way and slid from there,
+	// which is safe because the end of the line is filled first. Returns the
+	// bits of the directions that change the line
+	private static int slideBoth(byte[][] next, long[] gains, int start, int step, int len,
+			int toStart, int toEnd) {
+		byte[] fwd = next[toStart], back = next[toEnd];
+		int end = start + len*step;
+		int pos = start; // next free cell of fwd
+		int packed = start; // end of the tiles packed into back
+		boolean canMerge = false, merged = false;
+		boolean tileAfterGap = false, gapAfterTile = false;
+		long gained = 0;
+		for (int i=start; i!=end; i+=step) {
+			byte e = board[i];
+			if (e == 0) {
+				gapAfterTile |= packed != start;
+				continue;
+			}
+			tileAfterGap |= pos != i;
+			back[packed] = e;
+			packed += step;
+			if (canMerge && fwd[pos-step] == e) {
+				fwd[pos-step] = (byte) (e + 1);
+				gained += 1L << (e + 1);
+				canMerge = false;
+				merged = true;
+			}
+			else {
+				fwd[pos] = e;
+				pos += step;
+				canMerge = true;
+			}
+		}
+		for (; pos!=end; pos+=step) {
+			fwd[pos] = 0;
+		}
+
+		pos = end - step;
+		canMerge = false;
+		for (int k=packed-step; k!=start-step; k-=step) {
+			byte e = back[k];
+			if (canMerge && back[pos+step] == e) {
+				back[pos+step] = (byte) (e + 1);
+				canMerge = false;
+			}
+			else {
+				back[pos] = e;
+				pos -= step;
+				canMerge = true;
+			}
+		}
+		for (; pos!=start-step; pos-=step) {
+			back[pos] = 0;
+		}
+
+		gains[toStart] += gained;
+		gains[toEnd] += gained;
+		return (tileAfterGap || merged ? 1 << toStart : 0) | (gapAfterTile || merged ? 1 << toEnd : 0);
 	}
 	
 	/**
@@ -271,27 +739,41 @@ public class GameBoard {
 	 * accordingly.
 	 */
 	public static void shiftUp() {
-		boolean[][] merged = new boolean[xSize][ySize];
-		for (int col=0; col<ySize; col++) {
-			for (int row=1; row<xSize; row++) {
+		updateScore(shift(UP));
+	}
+	
+	/**
+	 * @brief Shifts all tiles of a given board upwards
+	 * @details Applies the same rules as shiftUp() to the given board, without
+	 * changing the game board or the score. Other move engines are checked
+	 * against this reference.
+	 * @param b 2D array of integers representing a board, which is updated in place
+	 * @return Integer representing the total value of the merged tiles
+	 */
+	public static int shiftUp(int[][] b) {
+		int rows = b.length, cols = b[0].length;
+		int gained = 0;
+		boolean[][] merged = new boolean[rows][cols];
+		for (int col=0; col<cols; col++) {
+			for (int row=1; row<rows; row++) {
 				// only make moves if there is a tile at current position
-				if (board[row][col] != 0) {
+				if (b[row][col] != 0) {
 					int cR = row; // keep track of current row
 					while (cR > 0) {
 						// empty cell above tile
-						if (board[cR-1][col] == 0) {
-							swapCells(cR, col, -1, 0);
+						if (b[cR-1][col] == 0) {
+							swap(b, cR, col, -1, 0);
 							cR--;
 						}
 						// non-empty cell above tile with same value,
 						// merge the tiles only if that tile was not merged on same turn
-						else if (board[cR-1][col] == board[cR][col]) {
+						else if (b[cR-1][col] == b[cR][col]) {
 							if (!merged[cR-1][col]) {
-								int val = board[cR][col];
-								board[cR-1][col] = 2*val;
-								board[cR][col] = 0;
+								int val = b[cR][col];
+								b[cR-1][col] = 2*val;
+								b[cR][col] = 0;
 								merged[cR-1][col] = true;
-								updateScore(2*val);
+								gained += 2*val;
 							}
 							break;
 						}
@@ -304,6 +786,7 @@ public class GameBoard {
 				}
 			}
 		}
+		return gained;
 	}
 	
 	/**
@@ -315,27 +798,41 @@ public class GameBoard {
 	 * accordingly.
 	 */
 	public static void shiftDown() {
-		boolean[][] merged = new boolean[xSize][ySize];
-		for (int col=0; col<ySize; col++) {
-			for (int row=xSize-2; row>=0; row--) {
+		updateScore(shift(DOWN));
+	}
+	
+	/**
+	 * @brief Shifts all tiles of a given board downwards
+	 * @details Applies the same rules as shiftDown() to the given board, without
+	 * changing the game board or the score. Other move engines are checked
+	 * against this reference.
+	 * @param b 2D array of integers representing a board, which is updated in place
+	 * @return Integer representing the total value of the merged tiles
+	 */
+	public static int shiftDown(int[][] b) {
+		int rows = b.length, cols = b[0].length;
+		int gained = 0;
+		boolean[][] merged = new boolean[rows][cols];
+		for (int col=0; col<cols; col++) {
+			for (int row=rows-2; row>=0; row--) {
 				// only make moves if there is a tile at current position
-				if (board[row][col] != 0) {
+				if (b[row][col] != 0) {
 					int cR = row; // keep track of current row
-					while (cR < xSize-1) {
+					while (cR < rows-1) {
 						// empty cell below tile
-						if (board[cR+1][col] == 0) {
-							swapCells(cR, col, 1, 0);
+						if (b[cR+1][col] == 0) {
+							swap(b, cR, col, 1, 0);
 							cR++;
 						}
 						// non-empty cell below tile with same value,
 						// merge the tiles only if that tile was not merged on same turn
-						else if (board[cR+1][col] == board[cR][col]) {
+						else if (b[cR+1][col] == b[cR][col]) {
 							if (!merged[cR+1][col]) {
-								int val = board[cR][col];
-								board[cR+1][col] = 2*val;
-								board[cR][col] = 0;
+								int val = b[cR][col];
+								b[cR+1][col] = 2*val;
+								b[cR][col] = 0;
 								merged[cR+1][col] = true;
-								updateScore(2*val);
+								gained += 2*val;
 							}
 							break;
 						}
@@ -348,6 +845,7 @@ public class GameBoard {
 				}
 			}
 		}
+		return gained;
 	}
 	
 	/**
@@ -359,27 +857,41 @@ public class GameBoard {
 	 * accordingly.
 	 */
 	public static void shiftLeft() {
-		boolean[][] merged = new boolean[xSize][ySize];
-		for (int row=0; row<xSize; row++) {
-			for (int col=1; col<ySize; col++) {
+		updateScore(shift(LEFT));
+	}
+	
+	/**
+	 * @brief Shifts all tiles of a given board towards the left
+	 * @details Applies the same rules as shiftLeft() to the given board, without
+	 * changing the game board or the score. Other move engines are checked
+	 * against this reference.
+	 * @param b 2D array of integers representing a board, which is updated in place
+	 * @return Integer representing the total value of the merged tiles
+	 */
+	public static int shiftLeft(int[][] b) {
+		int rows = b.length, cols = b[0].length;
+		int gained = 0;
+		boolean[][] merged = new boolean[rows][cols];
+		for (int row=0; row<rows; row++) {
+			for (int col=1; col<cols; col++) {
 				// only make moves if there is a tile at current position
-				if (board[row][col] != 0) {
+				if (b[row][col] != 0) {
 					int cC = col; // keep track of current column
 					while (cC > 0) {
 						// empty cell left of tile
-						if (board[row][cC-1] == 0) {
-							swapCells(row, cC, 0, -1);
+						if (b[row][cC-1] == 0) {
+							swap(b, row, cC, 0, -1);
 							cC--;
 						}
 						// non-empty cell left of tile with same value,
 						// merge the tiles only if that tile was not merged on same turn
-						else if (board[row][cC-1] == board[row][cC]) {
+						else if (b[row][cC-1] == b[row][cC]) {
 							if (!merged[row][cC-1]) {
-								int val = board[row][cC];
-								board[row][cC-1] = 2*val;
-								board[row][cC] = 0;
+								int val = b[row][cC];
+								b[row][cC-1] = 2*val;
+								b[row][cC] = 0;
 								merged[row][cC-1] = true;
-								updateScore(2*val);
+								gained += 2*val;
 							}
 							break;
 						}
@@ -392,6 +904,7 @@ public class GameBoard {
 				}
 			}
 		}
+		return gained;
 	}
 	
 	/**
@@ -403,27 +916,41 @@ public class GameBoard {
 	 * accordingly.
 	 */
 	public static void shiftRight() {
-		boolean[][] merged = new boolean[xSize][ySize];
-		for (int row=0; row<xSize; row++) {
-			for (int col=ySize-2; col>=0; col--) {
+		updateScore(shift(RIGHT));
+	}
+	
+	/**
+	 * @brief Shifts all tiles of a given board towards the right
+	 * @details Applies the same rules as shiftRight() to the given board, without
+	 * changing the game board or the score. Other move engines are checked
+	 * against this reference.
+	 * @param b 2D array of integers representing a board, which is updated in place
+	 * @return Integer representing the total value of the merged tiles
+	 */
+	public static int shiftRight(int[][] b) {
+		int rows = b.length, cols = b[0].length;
+		int gained = 0;
+		boolean[][] merged = new boolean[rows][cols];
+		for (int row=0; row<rows; row++) {
+			for (int col=cols-2; col>=0; col--) {
 				// only make moves if there is a tile at current position
-				if (board[row][col] != 0) {
+				if (b[row][col] != 0) {
 					int cC = col; // keep track of current column
-					while (cC < ySize-1) {
+					while (cC < cols-1) {
 						// empty cell right of tile
-						if (board[row][cC+1] == 0) {
-							swapCells(row, cC, 0, 1);
+						if (b[row][cC+1] == 0) {
+							swap(b, row, cC, 0, 1);
 							cC++;
 						}
 						// non-empty cell right of tile with same value,
 						// merge the tiles only if that tile was not merged on same turn
-						else if (board[row][cC+1] == board[row][cC]) {
+						else if (b[row][cC+1] == b[row][cC]) {
 							if (!merged[row][cC+1]) {
-								int val = board[row][cC];
-								board[row][cC+1] = 2*val;
-								board[row][cC] = 0;
+								int val = b[row][cC];
+								b[row][cC+1] = 2*val;
+								b[row][cC] = 0;
 								merged[row][cC+1] = true;
-								updateScore(2*val);
+								gained += 2*val;
 							}
 							break;
 						}
@@ -436,5 +963,6 @@ public class GameBoard {
 				}
 			}
 		}
+		return gained;
 	}
 }
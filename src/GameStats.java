@@ -0,0 +1,203 @@
+/**
+ * @file GameStats.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains running statistics over many games
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * @brief Summarises moves and games as they are played, without keeping them
+ * @details Final scores and game lengths go into quantile sketches, the
+ * largest tile of each game into a histogram by exponent, and the number of
+ * empty cells after each move into a running mean per stretch of the game
+ * (move 1, moves 2-3, 4-7 and so on). Every part has a fixed size, so memory
+ * stays the same however many games are played. A GameStats is meant to be
+ * fed by one thread; threads keep their own and merge them when results are
+ * wanted.
+ */
+public class GameStats {
+
+	private static final int PERIODS = 32;
+
+	private QuantileSketch scores = new QuantileSketch();
+	private QuantileSketch lengths = new QuantileSketch();
+	private final long[] maxTiles = new long[32];
+	private final long[] emptySum = new long[PERIODS];
+	private final long[] emptyCount = new long[PERIODS];
+	private long moves;
+
+	/**
+	 * @brief Records the board after a move
+	 * @param move Number of the move in the game, starting from 1
+	 * @param empty Number of empty cells after the move
+	 */
+	public void recordMove(int move, int empty) {
+		int p = period(move);
+		emptySum[p] += empty;
+		emptyCount[p]++;
+		moves++;
+	}
+
+	/**
+	 * @brief Records a finished game
+	 * @param score Final score
+	 * @param length Number of moves made
+	 * @param maxTile Largest tile on the final board
+	 */
+	public void recordGame(long score, int length, int maxTile) {
+		scores.add(score);
+		lengths.add(length);
+		maxTiles[31 - Integer.numberOfLeadingZeros(Math.max(maxTile, 1))]++;
+	}
+
+	/**
+	 * @brief Adds the statistics of another GameStats to this one
+	 * @param other Statistics to merge in, which are not changed
+	 */
+	public void merge(GameStats other) {
+		scores.merge(other.scores);
+		lengths.merge(other.lengths);
+		for (int i=0; i<maxTiles.length; i++) {
+			maxTiles[i] += other.maxTiles[i];
+		}
+		for (int i=0; i<PERIODS; i++) {
+			emptySum[i] += other.emptySum[i];
+			emptyCount[i] += other.emptyCount[i];
+		}
+		moves += other.moves;
+	}
+
+	/**
+	 * @brief Writes the statistics, so they can be read back by read
+	 * @param out Stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		scores.write(out);
+		lengths.write(out);
+		for (long n : maxTiles) {
+			out.writeLong(n);
+		}
+		for (int i=0; i<PERIODS; i++) {
+			out.writeLong(emptySum[i]);
+			out.writeLong(emptyCount[i]);
+		}
+		out.writeLong(moves);
+	}
+
+	/**
+	 * @brief Reads statistics written by write
+	 * @param in Stream to read from
+	 * @return The statistics
+	 * @throws IllegalArgumentException If the stream does not hold statistics
+	 * @throws IOException If the stream cannot be read
+	 */
+	public static GameStats read(DataInput in) throws IOException {
+		GameStats s = new GameStats();
+		s.scores = QuantileSketch.read(in);
+		s.lengths = QuantileSketch.read(in);
+		for (int i=0; i<s.maxTiles.length; i++) {
+			s.maxTiles[i] = in.readLong();
+		}
+		for (int i=0; i<PERIODS; i++) {
+			s.emptySum[i] = in.readLong();
+			s.emptyCount[i] = in.readLong();
+		}
+		s.moves = in.readLong();
+		return s;
+	}
+
+	/**
+	 * @brief Gets the number of games recorded
+	 * @return Number of games
+	 */
+	public long games() {
+		return scores.count();
+	}
+
+	/**
+	 * @brief Gets the number of moves recorded
+	 * @return Number of moves
+	 */
+	public long moves() {
+		return moves;
+	}
+
+	/**
+	 * @brief Gets the sketch of final scores
+	 * @return The sketch
+	 */
+	public QuantileSketch scores() {
+		return scores;
+	}
+
+	/**
+	 * @brief Gets the sketch of game lengths in moves
+	 * @return The sketch
+	 */
+	public QuantileSketch lengths() {
+		return lengths;
+	}
+
+	/**
+	 * @brief Gets the share of games whose largest tile was the given one
+	 * @param tile A power of two
+	 * @return Share of the games, or 0 if none were recorded
+	 */
+	public double maxTileShare(int tile) {
+		long games = games();
+		return games == 0 ? 0 : (double) maxTiles[31 - Integer.numberOfLeadingZeros(tile)] / games;
+	}
+
+	/**
+	 * @brief Gets the mean number of empty cells around a point in the game
+	 * @param move Number of the move, starting from 1
+	 * @return Mean number of empty cells over the moves grouped with it,
+	 * or 0 if none were recorded
+	 */
+	public double meanEmpty(int move) {
+		int p = period(move);
+		return emptyCount[p] == 0 ? 0 : (double) emptySum[p] / emptyCount[p];
+	}
+
+	/**
+	 * @brief Prints a summary of the statistics
+	 * @param out Stream to print to
+	 */
+	public void print(PrintStream out) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%,d games, %,d moves%n", games(), moves));
+		appendQuantiles(sb, "Score", scores);
+		appendQuantiles(sb, "Game length", lengths);
+		sb.append("Largest tile:");
+		for (int e=maxTiles.length-1; e>0; e--) {
+			if (maxTiles[e] > 0) {
+				sb.append(String.format(" %d %.1f%%", 1 << e, 100.0 * maxTiles[e] / games()));
+			}
+		}
+		sb.append(String.format("%nEmpty cells by move:"));
+		for (int p=0; p<PERIODS; p++) {
+			if (emptyCount[p] > 0) {
+				int first = 1 << p;
+				String range = p == 0 ? "1" : first + "-" + (2*first - 1);
+				sb.append(String.format(" %s: %.1f", range, (double) emptySum[p] / emptyCount[p]));
+			}
+		}
+		out.println(sb);
+	}
+
+	private static void appendQuantiles(StringBuilder sb, String name, QuantileSketch s) {
+		sb.append(String.format("%-13s mean %.0f, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n", name + ":",
+				s.mean(), s.quantile(0.1), s.quantile(0.5), s.quantile(0.9), s.quantile(0.99), s.max()));
+	}
+
+	// move 1 is period 0, moves 2-3 are period 1, moves 4-7 are period 2 and so on
+	private static int period(int move) {
+		return 31 - Integer.numberOfLeadingZeros(Math.max(move, 1));
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * @file InputReader.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a class for reading user commands from a channel
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @brief A reader that splits input from a byte channel into whitespace
+ * separated tokens
+ * @details Input is read through a single reusable byte buffer, so move
+ * commands can be decoded without allocating per keystroke. The same reader
+ * handles both an interactive console and piped or scripted input files.
+ * Reads block until input is available, since the console needs to wait for
+ * the user. A channel that returns no bytes without being finished is
+ * polled with a growing pause rather than in a busy loop. Use nextCommand
+ * for moves.
+ */
+public class InputReader {
+
+	/**
+	 * @brief Returned by nextCommand when input is exhausted
+	 */
+	public static final int EOF = -1;
+
+	/**
+	 * @brief Returned by nextCommand when a token is not a single character
+	 */
+	public static final int INVALID = 0;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// pauses between reads of a channel that has no input ready
+	private static final long MIN_WAIT_NANOS = 10_000;
+	private static final long MAX_WAIT_NANOS = 10_000_000;
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buf;
+	private boolean eof;
+
+	/**
+	 * @brief Constructs a reader for the given channel
+	 * @param channel Channel to read input from
+	 */
+	public InputReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		// a heap buffer, since the console channel copies through a byte array anyway
+		// and a direct buffer would slow down startup
+		this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buf.flip(); // start with nothing to read
+		this.eof = false;
+	}
+
+	/**
+	 * @brief Constructs a reader for the given stream
+	 * @param in Stream to read input from, such as System.in
+	 */
+	public InputReader(InputStream in) {
+		this(Channels.newChannel(in));
+	}
+
+	/**
+	 * @brief Reads the next single character command
+	 * @details Skips leading whitespace, then consumes a whole token. This
+	 * does not allocate.
+	 * @return The command character (such as 'u' or 'y') if the token has exactly
+	 * one character, INVALID if the token is longer, or EOF if input is exhausted
+	 */
+	public int nextCommand() {
+		int c = skipWhitespace();
+		if (c == EOF) {
+			return EOF;
+		}
+
+		// consume the remainder of the token
+		int len = 1;
+		while (true) {
+			int n = peek();
+			if (n == EOF || isWhitespace(n)) {
+				break;
+			}
+			buf.get();
+			len++;
+		}
+		return len == 1 ? c : INVALID;
+	}
+
+	/**
+	 * @brief Reads the next token as a string
+	 * @details Intended for rarely used prompts such as game mode selection,
+	 * as this allocates a new string.
+	 * @return The next token, or null if input is exhausted
+	 */
+	public String next() {
+		int c = skipWhitespace();
+		if (c == EOF) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append((char) c);
+		while (true) {
+			int n = peek();
+			if (n == EOF || isWhitespace(n)) {
+				break;
+			}
+			sb.append((char) buf.get());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @brief Reads the next token as an integer
+	 * @return Integer value of the next token
+	 * @throws NumberFormatException If the token is not an integer
+	 * or input is exhausted
+	 */
+	public int nextInt() {
+		String s = next();
+		if (s == null) {
+			throw new NumberFormatException("No input remaining");
+		}
+		return Integer.parseInt(s);
+	}
+
+	/**
+	 * @brief Gets whether or not all input has been consumed
+	 * @return True if there is no input remaining, False otherwise
+	 */
+	public boolean isEOF() {
+		return peek() == EOF;
+	}
+
+	// returns the first non-whitespace byte (consumed), or EOF
+	private int skipWhitespace() {
+		while (true) {
+			int c = peek();
+			if (c == EOF) {
+				return EOF;
+			}
+			buf.get();
+			if (!isWhitespace(c)) {
+				return c;
+			}
+		}
+	}
+
+	// returns the next byte without consuming it, refilling the buffer if needed
+	private int peek() {
+		if (!buf.hasRemaining() && !fill()) {
+			return EOF;
+		}
+		return buf.get(buf.position()) & 0xff;
+	}
+
+	private boolean fill() {
+		if (eof) {
+			return false;
+		}
+		buf.clear();
+		try {
+			int n;
+			long wait = MIN_WAIT_NANOS;
+			// a non-blocking channel may return 0 bytes without being finished,
+			// so wait for input with a growing pause instead of spinning
+			while ((n = channel.read(buf)) == 0) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException("Interrupted while waiting for input");
+				}
+				LockSupport.parkNanos(wait);
+				wait = Math.min(2 * wait, MAX_WAIT_NANOS);
+			}
+
+			if (n < 0) {
+				eof = true;
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buf.flip();
+		return buf.hasRemaining();
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * @file Leaderboard.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a leaderboard shared by many concurrent games
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @brief Collects final scores from many threads, keeping the best K and a
+ * histogram of all of them
+ * @details Every score is counted in LongAdder buckets laid out as in
+ * QuantileSketch, 32 to each power of two, so threads add to separate cells
+ * instead of one shared counter and the rank of a score is known to within
+ * about 3%.
+ * The best K scores are kept exactly in a concurrent skip list. Once it is
+ * full, a score no better than the last one evicted cannot get in, so most
+ * submissions are turned away by one read and never touch the list. The
+ * leaderboard can be saved to a file and loaded again; a save taken while
+ * scores are still arriving may miss some of them.
+ */
+public class Leaderboard {
+
+	private static final int MAGIC = 0x32304c42; // "20LB"
+	private static final int BUCKETS = QuantileSketch.BUCKETS;
+
+	// a score with the order it arrived in, so equal scores are all kept
+	private static final class Entry {
+		final long score, seq;
+
+		Entry(long score, long seq) {
+			this.score = score;
+			this.seq = seq;
+		}
+	}
+
+	private static final Comparator<Entry> BEST_FIRST = (x, y) -> x.score != y.score
+			? Long.compare(y.score, x.score) : Long.compare(x.seq, y.seq);
+
+	private final int k;
+	private final ConcurrentSkipListSet<Entry> top = new ConcurrentSkipListSet<>(BEST_FIRST);
+	private final AtomicInteger topSize = new AtomicInteger();
+	private final AtomicLong floor = new AtomicLong(-1);
+	private final AtomicLong seq = new AtomicLong();
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	/**
+	 * @brief Constructs an empty leaderboard
+	 * @param k Number of best scores to keep exactly
+	 * @throws IllegalArgumentException If k is less than 1
+	 */
+	public Leaderboard(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("A leaderboard must keep at least one score");
+		}
+		this.k = k;
+		for (int i=0; i<BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @brief Records the final score of a game
+	 * @details Safe to call from any number of threads at once
+	 * @param score Final score, which cannot be negative
+	 * @throws IllegalArgumentException If the score is negative
+	 */
+	public void submit(long score) {
+		if (score < 0) {
+			throw new IllegalArgumentException("Scores cannot be negative");
+		}
+		buckets[QuantileSketch.bucket(score)].increment();
+		if (score <= floor.get()) {
+			return;
+		}
+		top.add(new Entry(score, seq.getAndIncrement()));
+		if (topSize.incrementAndGet() > k) {
+			Entry evicted = top.pollLast();
+			if (evicted != null) {
+				topSize.decrementAndGet();
+				// anything no better than a score that was pushed out cannot get in
+				floor.accumulateAndGet(evicted.score, Math::max);
+			}
+		}
+	}
+
+	/**
+	 * @brief Gets the best scores, best first
+	 * @return Up to K scores
+	 */
+	public long[] top() {
+		long[] scores = new long[k];
+		int n = 0;
+		for (Entry e : top) {
+			if (n == k) {
+				break;
+			}
+			scores[n++] = e.score;
+		}
+		return n == k ? scores : Arrays.copyOf(scores, n);
+	}
+
+	/**
+	 * @brief Gets the number of scores submitted
+	 * @return Number of scores
+	 */
+	public long count() {
+		long n = 0;
+		for (LongAdder b : buckets) {
+			n += b.sum();
+		}
+		return n;
+	}
+
+	/**
+	 * @brief Gets the approximate rank a score would have
+	 * @details A score that could still make the best K is ranked exactly
+	 * from the list. Below that, scores in the same bucket are assumed to be
+	 * spread evenly across it, so the error is at most the count of one bucket.
+	 * @param score Score to rank
+	 * @return 1 plus the estimated number of submitted scores above it
+	 */
+	public long rank(long score) {
+		if (score < 0) {
+			return count() + 1;
+		}
+		if (score >= floor.get()) {
+			// every score above this one is still in the list
+			long n = 0;
+			for (Entry e : top) {
+				if (e.score <= score) {
+					break;
+				}
+				n++;
+			}
+			return 1 + n;
+		}
+		int b = QuantileSketch.bucket(score);
+		double above = 0;
+		for (int i=b+1; i<BUCKETS; i++) {
+			above += buckets[i].sum();
+		}
+		// the share of this bucket above the score
+		long low = QuantileSketch.lowerBound(b);
+		long width = QuantileSketch.width(b);
+		above += buckets[b].sum() * (double) (low + width - 1 - score) / width;
+		return 1 + Math.round(above);
+	}
+
+	/**
+	 * @brief Saves the leaderboard to a file
+	 * @details The file is written next to the target and then moved over
+	 * it, so a crash during the save leaves the previous snapshot intact
+	 * @param file Path of the file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(k);
+			out.writeInt(BUCKETS);
+			for (LongAdder b : buckets) {
+				out.writeLong(b.sum());
+			}
+			long[] best = top();
+			out.writeInt(best.length);
+			for (long s : best) {
+				out.writeLong(s);
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @brief Loads a leaderboard saved by save
+	 * @param file Path of the file
+	 * @return The leaderboard
+	 * @throws IllegalArgumentException If the file is not a leaderboard
+	 * @throws IOException If the file cannot be read
+	 */
+	public static Leaderboard load(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IllegalArgumentException(file + " is not a leaderboard");
+			}
+			Leaderboard lb = new Leaderboard(in.readInt());
+			if (in.readInt() != BUCKETS) {
+				throw new IllegalArgumentException(file + " has a different histogram");
+			}
+			for (LongAdder b : lb.buckets) {
+				b.add(in.readLong());
+			}
+			int n = in.readInt();
+			long last = -1;
+			for (int i=0; i<n; i++) {
+				last = in.readLong();
+				lb.addTop(last);
+			}
+			if (lb.count() > n) {
+				// some scores were only kept in the histogram
+				lb.floor.set(last);
+			}
+			return lb;
+		}
+	}
+
+	// restores a best score without counting it again in the histogram
+	private void addTop(long score) {
+		top.add(new Entry(score, seq.getAndIncrement()));
+		topSize.incrementAndGet();
+	}
+}
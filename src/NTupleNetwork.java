@@ -0,0 +1,350 @@
+/**
+ * @file NTupleNetwork.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains an n-tuple network player trained by self-play
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * @brief A learned value function for packed 4x4 boards, and a player that uses it
+ * @details Each tuple is a list of cells. The exponents in those cells are
+ * read as a base 16 number, which indexes a table of weights, and the value of
+ * a board is the sum of the weights selected by every tuple. Each tuple is
+ * also applied to the 8 rotations and reflections of the board, sharing its
+ * table, so all the weights live in one large float array.
+ *
+ * The network is trained by temporal difference learning on the boards just
+ * after each move (afterstates), playing games against itself with the moves of
+ * BitBoard. Training threads update the shared array without any locks
+ * (Hogwild): an update lost to a race is rare and does little harm, and this
+ * lets training scale with the number of cores. Choosing a move does not allocate.
+ */
+public class NTupleNetwork {
+
+	// the four 6-tuples commonly used for 2048, as cell indices (4r+c)
+	private static final int[][] STANDARD_TUPLES = {
+		{0, 1, 2, 3, 4, 5},
+		{4, 5, 6, 7, 8, 9},
+		{0, 1, 2, 4, 5, 6},
+		{4, 5, 6, 8, 9, 10}
+	};
+
+	// a smaller set of 4-tuples: two rows and two squares
+	private static final int[][] SMALL_TUPLES = {
+		{0, 1, 2, 3},
+		{4, 5, 6, 7},
+		{0, 1, 4, 5},
+		{1, 2, 5, 6}
+	};
+
+	private final float[] weights;
+
+	// shifts of the cells of every tuple in every symmetry, flattened
+	private final int[] shifts;
+	// the first entry of shifts for each tuple in each symmetry, plus an end marker
+	private final int[] starts;
+	// offset into weights for each tuple in each symmetry
+	private final int[] offsets;
+
+	private final double fourChance;
+
+	/**
+	 * @brief Constructs a network with all weights 0
+	 * @param tuples Array of tuples, each an array of cell indices (4 * row + column)
+	 * @param rules Rules giving the chance of a new tile being a 4
+	 */
+	public NTupleNetwork(int[][] tuples, Rules rules) {
+		this.fourChance = rules.getFourChance();
+		int n = tuples.length * 8;
+		starts = new int[n + 1];
+		offsets = new int[n];
+
+		int totalCells = 0;
+		for (int[] t : tuples) {
+			totalCells += t.length * 8;
+		}
+		shifts = new int[totalCells];
+
+		long size = 0;
+		int k = 0, s = 0;
+		for (int[] t : tuples) {
+			for (int sym=0; sym<8; sym++) {
+				starts[k] = s;
+				offsets[k] = (int) size;
+				for (int cell : t) {
+					shifts[s++] = 4 * symmetry(cell, sym);
+				}
+				k++;
+			}
+			size += 1L << (4 * t.length);
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Too many weights");
+			}
+		}
+		starts[n] = s;
+		weights = new float[(int) size];
+	}
+
+	/**
+	 * @brief Constructs a network with the commonly used four 6-tuples
+	 * @details Needs 4 * 16^6 weights (256 MB)
+	 * @return A new network
+	 */
+	public static NTupleNetwork standard() {
+		return new NTupleNetwork(STANDARD_TUPLES, Rules.STANDARD);
+	}
+
+	/**
+	 * @brief Constructs a network with four 4-tuples, which trains faster but plays worse
+	 * @return A new network
+	 */
+	public static NTupleNetwork small() {
+		return new NTupleNetwork(SMALL_TUPLES, Rules.STANDARD);
+	}
+
+	// the cell that a cell moves to under one of the 8 rotations and reflections
+	private static int symmetry(int cell, int sym) {
+		int r = cell / 4, c = cell % 4;
+		for (int i=0; i<(sym & 3); i++) {
+			int t = r;
+			r = c;
+			c = 3 - t;
+		}
+		if (sym >= 4) {
+			c = 3 - c;
+		}
+		return 4*r + c;
+	}
+
+	/**
+	 * @brief Gets the value of a board, the score expected to be gained from it
+	 * @param b The packed board
+	 * @return Value of the board
+	 */
+	public float value(long b) {
+		float v = 0;
+		for (int k=0; k<offsets.length; k++) {
+			v += weights[index(b, k)];
+		}
+		return v;
+	}
+
+	// adds delta to every weight used to value the board
+	private void update(long b, float delta) {
+		for (int k=0; k<offsets.length; k++) {
+			weights[index(b, k)] += delta;
+		}
+	}
+
+	// one step of temporal difference learning, moving the value of a board
+	// towards a target, with the learning rate shared between its weights
+	void learn(long b, float target, float alpha) {
+		update(b, alpha / offsets.length * (target - value(b)));
+	}
+
+	private int index(long b, int k) {
+		int idx = 0;
+		for (int s=starts[k]; s<starts[k+1]; s++) {
+			idx = (idx << 4) | ((int) (b >>> shifts[s]) & 0xF);
+		}
+		return offsets[k] + idx;
+	}
+
+	/**
+	 * @brief Chooses the move with the highest score plus value after the move
+	 * @param b The packed board
+	 * @return The best direction, or -1 if no move changes the board
+	 */
+	public int bestMove(long b) {
+		int best = -1;
+		float bestValue = Float.NEGATIVE_INFINITY;
+		for (int dir=0; dir<4; dir++) {
+			long next = BitBoard.move(b, dir);
+			if (next != b) {
+				float v = BitBoard.moveScore(b, dir) + value(next);
+				if (v > bestValue) {
+					bestValue = v;
+					best = dir;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @brief Plays one game of self-play, learning from every move
+	 * @param rand Source of random numbers for the new tiles
+	 * @param alpha Learning rate
+	 * @return The final score of the game
+	 */
+	public long train(SplittableRandom rand, float alpha) {
+		long b = BitBoard.spawn(BitBoard.spawn(0, rand, fourChance), rand, fourChance);
+		long score = 0;
+		long after = 0; // the previous afterstate
+		boolean first = true;
+
+		while (true) {
+			int dir = bestMove(b);
+			if (dir < 0) {
+				break;
+			}
+			int reward = BitBoard.moveScore(b, dir);
+			long next = BitBoard.move(b, dir);
+			if (!first) {
+				learn(after, reward + value(next), alpha);
+			}
+			score += reward;
+			after = next;
+			first = false;
+			b = BitBoard.spawn(next, rand, fourChance);
+		}
+		// nothing more can be gained after the final move
+		if (!first) {
+			learn(after, 0, alpha);
+		}
+		return score;
+	}
+
+	/**
+	 * @brief Trains on several threads at once, sharing the weights without locks
+	 * @param threads Number of threads
+	 * @param gamesPerThread Number of games each thread plays
+	 * @param alpha Learning rate
+	 * @param seed Seed for the random tiles
+	 * @return Array with the average score of the games played by each thread
+	 * @throws IllegalStateException If a thread fails, so that its games
+	 * were not all played
+	 */
+	public double[] trainParallel(int threads, int gamesPerThread, float alpha, long seed) {
+		double[] averages = new double[threads];
+		Throwable[] failures = new Throwable[threads];
+		Thread[] workers = new Thread[threads];
+		SplittableRandom root = new SplittableRandom(seed);
+		for (int t=0; t<threads; t++) {
+			int id = t;
+			SplittableRandom rand = root.split();
+			workers[t] = new Thread(() -> {
+				try {
+					long total = 0;
+					for (int g=0; g<gamesPerThread; g++) {
+						total += train(rand, alpha);
+					}
+					averages[id] = (double) total / gamesPerThread;
+				}
+				catch (Throwable e) {
+					failures[id] = e;
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread w : workers) {
+			try {
+				w.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Training was interrupted", e);
+			}
+		}
+		for (Throwable e : failures) {
+			if (e != null) {
+				throw new IllegalStateException("A training thread failed, so training was cut short", e);
+			}
+		}
+		return averages;
+	}
+
+	/**
+	 * @brief Saves the weights to a file
+	 * @param file Path of the file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i=0; i<weights.length; ) {
+				buf.clear();
+				int n = Math.min(buf.capacity() / 4, weights.length - i);
+				buf.asFloatBuffer().put(weights, i, n);
+				buf.limit(n * 4);
+				while (buf.hasRemaining()) {
+					ch.write(buf);
+				}
+				i += n;
+			}
+		}
+	}
+
+	/**
+	 * @brief Loads weights saved by a network with the same tuples
+	 * @param file Path of the file
+	 * @throws IllegalArgumentException If the file holds a different number of weights
+	 * @throws IOException If the file cannot be read
+	 */
+	public void load(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() != 4L * weights.length) {
+				throw new IllegalArgumentException("The file holds a different network");
+			}
+			ByteBuffer buf = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i=0; i<weights.length; ) {
+				buf.clear();
+				int n = Math.min(buf.capacity() / 4, weights.length - i);
+				buf.limit(n * 4);
+				while (buf.hasRemaining()) {
+					ch.read(buf);
+				}
+				buf.flip();
+				buf.asFloatBuffer().get(weights, i, n);
+				i += n;
+			}
+		}
+	}
+
+	/**
+	 * @brief Trains a network from the command line, reporting progress
+	 * @details Usage: java NTupleNetwork <games> [threads] [file] [small]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java NTupleNetwork <games> [threads] [file] [small]");
+			System.exit(1);
+		}
+		int games = Integer.parseInt(args[0]);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		boolean small = args.length > 3 && args[3].equals("small");
+		NTupleNetwork net = small ? small() : standard();
+		Path file = args.length > 2 ? Paths.get(args[2]) : null;
+		if (file != null && Files.exists(file)) {
+			net.load(file);
+		}
+
+		long seed = System.nanoTime();
+		int perBatch = Math.max(1, 1000 / threads);
+		for (int done=0; done<games; done += perBatch * threads) {
+			long start = System.nanoTime();
+			double[] avg = net.trainParallel(threads, perBatch, 0.1f, seed++);
+			double secs = (System.nanoTime() - start) / 1e9;
+			double mean = 0;
+			for (double a : avg) {
+				mean += a / threads;
+			}
+			System.out.printf("%,d games, average score %.0f, %.0f games/s%n",
+					done + perBatch * threads, mean, perBatch * threads / secs);
+		}
+		if (file != null) {
+			net.save(file);
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/**
+ * @file OpeningBook.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a book of precomputed moves for early 4x4 positions
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @brief Best moves for the positions most likely to come up early in a game
+ * @details The builder starts from every board GameBoard.init can deal (two
+ * tiles, each a 2 or a 4) with its probability, and works forward one move
+ * at a time. Each position is searched deeply with Expectimax, the best move
+ * is played, and every possible new tile is added with its probability to
+ * give the positions of the next move. Positions less likely than a cut-off
+ * are dropped, so the book holds the early positions that a player
+ * following it will actually meet.
+ *
+ * Boards are stored in canonical form, the smallest of the 8 rotations and
+ * reflections, so symmetric positions share an entry. The file holds the
+ * sorted canonical boards followed by their moves, and is memory-mapped, so
+ * a lookup is a binary search over the mapping that allocates nothing and
+ * can be shared between threads.
+ */
+public class OpeningBook {
+
+	private static final int MAGIC = 0x32304f42; // "20OB"
+	private static final int HEADER_SIZE = 32;
+	// a board and its move
+	private static final int ENTRY_SIZE = 9;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final int count;
+
+	private OpeningBook(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		map.order(ByteOrder.LITTLE_ENDIAN);
+		if (size < HEADER_SIZE || map.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not an opening book file");
+		}
+		this.count = map.getInt(4);
+		// a lookup trusts the count, so the entries must fill the file exactly
+		if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE != size) {
+			throw new IllegalArgumentException("The opening book is cut short or damaged");
+		}
+	}
+
+	/**
+	 * @brief Opens a book for lookups
+	 * @param file Path of the book file
+	 * @return The book
+	 * @throws IllegalArgumentException If the file is not a book, or its
+	 * size does not match the number of entries in its header
+	 * @throws IOException If the file cannot be read
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new OpeningBook(ch);
+		}
+		catch (IllegalArgumentException | IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Looks up the best move for a board
+	 * @details Does not allocate
+	 * @param board The packed board
+	 * @return The direction to move in (BitBoard.UP, DOWN, LEFT or RIGHT),
+	 * or -1 if the board is not in the book
+	 */
+	public int lookup(long board) {
+		long key = Long.MAX_VALUE;
+		int sym = 0;
+		for (int s=0; s<8; s++) {
+			long b = transform(board, s);
+			if (b < key) {
+				key = b;
+				sym = s;
+			}
+		}
+
+		int lo = 0, hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long k = map.getLong(HEADER_SIZE + 8 * mid);
+			if (k < key) {
+				lo = mid + 1;
+			}
+			else if (k > key) {
+				hi = mid - 1;
+			}
+			else {
+				return fromCanonical(map.get(HEADER_SIZE + 8 * count + mid), sym);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @brief Gets the number of positions in the book
+	 * @return Number of entries
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @brief Closes the file holding the book
+	 * @throws IOException If the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @brief Builds a book and writes it to a file
+	 * @param file Path of the book file, which is replaced
+	 * @param plies Number of moves from the start of a game to cover
+	 * @param depth Depth of the search for each position
+	 * @param minProbability Positions less likely than this to be reached are left out
+	 * @param rules Rules giving the chance of a new tile being a 4
+	 * @param threads Number of threads to search with
+	 * @return For each move, the probability that a player following the
+	 * book meets a position in it
+	 * @throws IOException If the file cannot be written
+	 */
+	public static double[] build(Path file, int plies, int depth, double minProbability,
+			Rules rules, int threads) throws IOException {
+		double four = rules.getFourChance();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		Expectimax search = new Expectimax(Evaluator.DEFAULT, rules, pool);
+		Map<Long, Byte> book = new HashMap<>();
+		double[] covered = new double[plies];
+		try {
+			// the two starting tiles
+			Map<Long, Double> level = new HashMap<>();
+			level.put(0L, 1.0);
+			level = spawnAll(spawnAll(level, four), four);
+
+			for (int ply=0; ply<plies; ply++) {
+				Map<Long, Double> next = new HashMap<>();
+				for (Map.Entry<Long, Double> e : level.entrySet()) {
+					long b = e.getKey();
+					double p = e.getValue();
+					if (p < minProbability) {
+						continue;
+					}
+					int dir = search.bestMove(b, depth);
+					if (dir < 0) {
+						continue;
+					}
+					book.put(b, (byte) dir);
+					covered[ply] += p;
+					next.merge(BitBoard.move(b, dir), p, Double::sum);
+				}
+				level = spawnAll(next, four);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		long[] keys = new long[book.size()];
+		int n = 0;
+		for (long k : book.keySet()) {
+			keys[n++] = k;
+		}
+		Arrays.sort(keys);
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + ENTRY_SIZE * keys.length).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(0, MAGIC);
+		buf.putInt(4, keys.length);
+		buf.putInt(8, depth);
+		buf.putInt(12, plies);
+		for (int i=0; i<keys.length; i++) {
+			buf.putLong(HEADER_SIZE + 8 * i, keys[i]);
+			buf.put(HEADER_SIZE + 8 * keys.length + i, book.get(keys[i]));
+		}
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+		}
+		return covered;
+	}
+
+	// every board reached by adding a tile, in canonical form, with its probability
+	private static Map<Long, Double> spawnAll(Map<Long, Double> level, double four) {
+		Map<Long, Double> next = new HashMap<>();
+		for (Map.Entry<Long, Double> e : level.entrySet()) {
+			long b = e.getKey();
+			int empty = BitBoard.countEmpty(b);
+			for (int i=0; i<16; i++) {
+				if (((b >>> (4*i)) & 0xF) == 0) {
+					double p = e.getValue() / empty;
+					next.merge(canonical(b | 1L << (4*i)), p * (1 - four), Double::sum);
+					next.merge(canonical(b | 2L << (4*i)), p * four, Double::sum);
+				}
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * @brief Gets the canonical form of a board
+	 * @param board The packed board
+	 * @return The smallest of the board's 8 rotations and reflections
+	 */
+	public static long canonical(long board) {
+		long key = Long.MAX_VALUE;
+		for (int s=0; s<8; s++) {
+			key = Math.min(key, transform(board, s));
+		}
+		return key;
+	}
+
+	/**
+	 * @brief Applies one of the 8 symmetries of the square to a board
+	 * @param board The packed board
+	 * @param sym Symmetry from 0 to 7: bit 0 mirrors, bit 1 flips, and
+	 * bit 2 then transposes
+	 * @return The transformed board
+	 */
+	static long transform(long board, int sym) {
+		if ((sym & 1) != 0) {
+			board = BitBoard.mirror(board);
+		}
+		if ((sym & 2) != 0) {
+			board = BitBoard.flip(board);
+		}
+		if ((sym & 4) != 0) {
+			board = BitBoard.transpose(board);
+		}
+		return board;
+	}
+
+	/**
+	 * @brief Gets the direction on a transformed board matching one on the original
+	 * @param dir Direction on the original board
+	 * @param sym Symmetry applied to the board
+	 * @return Direction on the transformed board
+	 */
+	static int toCanonical(int dir, int sym) {
+		if ((sym & 1) != 0 && dir >= BitBoard.LEFT) {
+			dir ^= 1; // left and right swap
+		}
+		if ((sym & 2) != 0 && dir < BitBoard.LEFT) {
+			dir ^= 1; // up and down swap
+		}
+		if ((sym & 4) != 0) {
+			dir ^= 2; // up becomes left, down becomes right
+		}
+		return dir;
+	}
+
+	// undoes toCanonical, applying the same swaps in the opposite order
+	private static int fromCanonical(int dir, int sym) {
+		if ((sym & 4) != 0) {
+			dir ^= 2;
+		}
+		if ((sym & 2) != 0 && dir < BitBoard.LEFT) {
+			dir ^= 1;
+		}
+		if ((sym & 1) != 0 && dir >= BitBoard.LEFT) {
+			dir ^= 1;
+		}
+		return dir;
+	}
+
+	/**
+	 * @brief Builds a book from the command line
+	 * @details Usage: java OpeningBook <file> [plies] [depth] [minProbability] [threads]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java OpeningBook <file> [plies] [depth] [minProbability] [threads]");
+			System.exit(1);
+		}
+		Path file = Paths.get(args[0]);
+		int plies = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		double minProbability = args.length > 3 ? Double.parseDouble(args[3]) : 1e-4;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		double[] covered = build(file, plies, depth, minProbability, Rules.STANDARD, threads);
+		double secs = (System.nanoTime() - start) / 1e9;
+		OpeningBook book = open(file);
+		System.out.printf("Built %,d positions in %.1f s%n", book.size(), secs);
+		for (int ply=0; ply<plies; ply++) {
+			System.out.printf("  move %2d: %5.1f%% of games following the book are covered%n",
+					ply + 1, 100 * covered[ply]);
+		}
+		book.close();
+	}
+}
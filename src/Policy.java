@@ -0,0 +1,209 @@
+/**
+ * @file Policy.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains an interface for computer players of a 4x4 game
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * @brief A computer player, which chooses a move for a packed 4x4 board
+ * @details A policy may keep state between moves (such as a search table),
+ * so each thread should use its own instance, created from a supplier.
+ */
+public interface Policy {
+
+	/**
+	 * @brief Chooses a move
+	 * @param board The packed board
+	 * @return The direction to move in (BitBoard.UP, DOWN, LEFT or RIGHT),
+	 * or -1 if no move changes the board
+	 */
+	int chooseMove(long board);
+
+	/**
+	 * @brief Starts a new game
+	 * @details Called with the seed of the game's tiles before its first
+	 * move. A policy with randomness of its own draws it from this seed, so
+	 * a game plays the same way whichever thread or instance plays it.
+	 * @param seed Seed of the game
+	 */
+	default void newGame(long seed) {
+	}
+
+	/**
+	 * @brief A supplier of new instances of a policy, which may hold a file
+	 * open for all of them
+	 * @details Closing it releases the file, after which the policies it
+	 * supplied must not be used.
+	 */
+	interface Factory extends Supplier<Policy>, Closeable {
+		@Override
+		default void close() throws IOException {
+		}
+	}
+
+	/**
+	 * @brief Gets a supplier of policies from a name given on the command line
+	 * @details The names are "random", "greedy" (the best evaluation one move
+	 * ahead), "expectimax:depth", "ntuple:file" or "ntuple:file:small"
+	 * for a trained network, and "book:file:depth" for an opening book that
+	 * falls back to expectimax for positions it does not hold. A network or
+	 * book is loaded once and shared, since choosing a move only reads it. A
+	 * book stays open until the factory is closed.
+	 * Searches use the spawn chance of the rules and run on the given pool,
+	 * which belongs to the caller, so no policy holds threads of its own.
+	 * @param name Name of the policy
+	 * @param rules Rules of the games the policy will play
+	 * @param pool Pool of threads that searching policies run on
+	 * @return A factory of new instances of the policy
+	 * @throws IllegalArgumentException If the name is not recognised
+	 */
+	static Factory byName(String name, Rules rules, ForkJoinPool pool) {
+		checkName(name);
+		String[] parts = name.split(":");
+		switch (parts[0]) {
+			case "random":
+				return () -> new Policy() {
+					private SplittableRandom rand = new SplittableRandom(name.hashCode());
+
+					@Override
+					public void newGame(long seed) {
+						// not the seed itself, which would repeat the draws of the tiles
+						rand = new SplittableRandom(seed).split();
+					}
+
+					@Override
+					public int chooseMove(long b) {
+						// try directions from a random start until one changes the board
+						int start = rand.nextInt(4);
+						for (int i=0; i<4; i++) {
+							int dir = (start + i) & 3;
+							if (BitBoard.move(b, dir) != b) {
+								return dir;
+							}
+						}
+						return -1;
+					}
+				};
+			case "greedy":
+				return () -> b -> {
+					int best = -1;
+					float bestValue = Float.NEGATIVE_INFINITY;
+					for (int dir=0; dir<4; dir++) {
+						long next = BitBoard.move(b, dir);
+						if (next != b) {
+							float v = Evaluator.DEFAULT.evaluate(next);
+							if (v > bestValue) {
+								bestValue = v;
+								best = dir;
+							}
+						}
+					}
+					return best;
+				};
+			case "expectimax":
+				int depth = parts.length > 1 ? Integer.parseInt(parts[1]) : 2;
+				return () -> {
+					// each player has its own transposition table
+					Expectimax search = new Expectimax(Evaluator.DEFAULT, rules, pool);
+					return b -> search.bestMove(b, depth);
+				};
+			case "ntuple":
+				NTupleNetwork net = parts.length > 2 && parts[2].equals("small")
+						? NTupleNetwork.small() : NTupleNetwork.standard();
+				try {
+					net.load(Paths.get(parts[1]));
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return () -> net::bestMove;
+			case "book":
+				int fallback = parts.length > 2 ? Integer.parseInt(parts[2]) : 2;
+				OpeningBook book;
+				try {
+					book = OpeningBook.open(Paths.get(parts[1]));
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return new Factory() {
+					@Override
+					public Policy get() {
+						Expectimax search = new Expectimax(Evaluator.DEFAULT, rules, pool);
+						return b -> {
+							int dir = book.lookup(b);
+							return dir >= 0 ? dir : search.bestMove(b, fallback);
+						};
+					}
+
+					@Override
+					public void close() throws IOException {
+						book.close();
+					}
+				};
+			default:
+				throw new IllegalArgumentException("Unknown policy: " + name);
+		}
+	}
+
+	/**
+	 * @brief Checks a policy name without building the policy
+	 * @details Checks the kind of policy and its arguments, and that any file
+	 * it names can be read, but does not load a network or open a book, so
+	 * it is cheap enough to check names long before the policies are used.
+	 * @param name Name of the policy, as in byName
+	 * @throws IllegalArgumentException If byName would not recognise the name
+	 */
+	static void checkName(String name) {
+		String[] parts = name.split(":");
+		switch (parts[0]) {
+			case "random":
+			case "greedy":
+				break;
+			case "expectimax":
+				if (parts.length > 1) {
+					checkDepth(parts[1]);
+				}
+				break;
+			case "ntuple":
+				checkFile(parts, "ntuple needs a weights file");
+				if (parts.length > 2 && !parts[2].equals("small")) {
+					throw new IllegalArgumentException("Unknown network size: " + parts[2]);
+				}
+				break;
+			case "book":
+				checkFile(parts, "book needs a book file");
+				if (parts.length > 2) {
+					checkDepth(parts[2]);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown policy: " + name);
+		}
+	}
+
+	private static void checkDepth(String depth) {
+		if (Integer.parseInt(depth) < 1) {
+			throw new IllegalArgumentException("The search depth must be at least 1");
+		}
+	}
+
+	private static void checkFile(String[] parts, String missing) {
+		if (parts.length < 2) {
+			throw new IllegalArgumentException(missing);
+		}
+		if (!Files.isReadable(Paths.get(parts[1]))) {
+			throw new IllegalArgumentException("Cannot read " + parts[1]);
+		}
+	}
+}
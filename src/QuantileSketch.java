@@ -0,0 +1,199 @@
+/**
+ * @file QuantileSketch.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a fixed size, mergeable summary of a stream of values
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @brief Estimates quantiles of a stream of non-negative values in constant memory
+ * @details Values are counted in log scaled buckets: every value below 32
+ * has its own bucket, and above that each power of two is split into 32
+ * buckets, so an estimate is within about 3% of the true value. The sketch
+ * never grows, and two sketches are merged by adding their counts, so each
+ * thread can keep its own and they are combined when results are wanted.
+ * A sketch is not safe to share between threads.
+ */
+public class QuantileSketch {
+
+	static final int SUB_BITS = 5;
+	static final int SUB_MASK = (1 << SUB_BITS) - 1;
+	static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+	private double sum;
+
+	/**
+	 * @brief Adds a value
+	 * @param v Value, which cannot be negative
+	 * @throws IllegalArgumentException If the value is negative
+	 */
+	public void add(long v) {
+		if (v < 0) {
+			throw new IllegalArgumentException("Values cannot be negative");
+		}
+		counts[bucket(v)]++;
+		count++;
+		sum += v;
+		min = Math.min(min, v);
+		max = Math.max(max, v);
+	}
+
+	/**
+	 * @brief Adds all values of another sketch to this one
+	 * @param other Sketch to merge in, which is not changed
+	 */
+	public void merge(QuantileSketch other) {
+		for (int i=0; i<BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @brief Removes all values
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+	}
+
+	/**
+	 * @brief Estimates a quantile
+	 * @param q Quantile, from 0 for the smallest value to 1 for the largest
+	 * @return The middle of the bucket holding the quantile, kept within the
+	 * smallest and largest values seen, which are exact for 0 and 1,
+	 * or 0 if the sketch is empty
+	 */
+	public long quantile(double q) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(q * count);
+		if (target <= 1) {
+			return min;
+		}
+		if (target >= count) {
+			return max;
+		}
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				long mid = lowerBound(i) + (width(i) - 1) / 2;
+				return Math.max(min, Math.min(max, mid));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @brief Writes the sketch, so it can be read back by read
+	 * @details Only the buckets holding values are written
+	 * @param out Stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		int used = 0;
+		for (long c : counts) {
+			if (c != 0) {
+				used++;
+			}
+		}
+		out.writeLong(count);
+		out.writeLong(min);
+		out.writeLong(max);
+		out.writeDouble(sum);
+		out.writeInt(used);
+		for (int i=0; i<BUCKETS; i++) {
+			if (counts[i] != 0) {
+				out.writeShort(i);
+				out.writeLong(counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * @brief Reads a sketch written by write
+	 * @param in Stream to read from
+	 * @return The sketch
+	 * @throws IllegalArgumentException If the stream does not hold a sketch
+	 * @throws IOException If the stream cannot be read
+	 */
+	public static QuantileSketch read(DataInput in) throws IOException {
+		QuantileSketch s = new QuantileSketch();
+		s.count = in.readLong();
+		s.min = in.readLong();
+		s.max = in.readLong();
+		s.sum = in.readDouble();
+		int used = in.readInt();
+		for (int k=0; k<used; k++) {
+			int i = in.readUnsignedShort();
+			if (i >= BUCKETS) {
+				throw new IllegalArgumentException("Not a quantile sketch");
+			}
+			s.counts[i] = in.readLong();
+		}
+		return s;
+	}
+
+	/**
+	 * @brief Gets the number of values added
+	 * @return Number of values
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * @brief Gets the mean of the values added
+	 * @return The exact mean, or 0 if the sketch is empty
+	 */
+	public double mean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * @brief Gets the largest value added
+	 * @return The largest value, or 0 if the sketch is empty
+	 */
+	public long max() {
+		return count == 0 ? 0 : max;
+	}
+
+	// values below 32 have a bucket each, above that there are 32 per power of two
+	static int bucket(long v) {
+		if (v < (1 << SUB_BITS)) {
+			return (int) v;
+		}
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		return ((e - SUB_BITS + 1) << SUB_BITS) + (int) ((v >>> (e - SUB_BITS)) & SUB_MASK);
+	}
+
+	// the smallest value in a bucket
+	static long lowerBound(int b) {
+		if (b < (1 << SUB_BITS)) {
+			return b;
+		}
+		int e = (b >> SUB_BITS) + SUB_BITS - 1;
+		return (1L << e) + ((long) (b & SUB_MASK) << (e - SUB_BITS));
+	}
+
+	// the number of values in a bucket
+	static long width(int b) {
+		return b < (1 << SUB_BITS) ? 1 : 1L << ((b >> SUB_BITS) - 1);
+	}
+}
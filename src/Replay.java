@@ -0,0 +1,341 @@
+/**
+ * @file Replay.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a recorded game that can be opened at any move
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @brief A recorded game, with saved boards along the way so that any move
+ * can be reached without playing the whole game again
+ * @details Each move is stored as an int holding its direction and the tile
+ * added after it (cell and exponent), so a game is played again without the
+ * random number generator. Every interval moves the whole board and score
+ * are saved as a keyframe, compressed with Deflater. The file ends with the
+ * offset of every keyframe, so seeking to a move reads one keyframe and
+ * plays at most interval - 1 moves from it, however long the game is.
+ *
+ * File layout: a 32 byte header (magic, rows, cols, interval, winning tile,
+ * keep playing, chance of a 4), then for each keyframe its score, its length
+ * and its compressed board followed by up to interval moves, then the
+ * keyframe offsets, and last the number of moves, the number of keyframes
+ * and the magic again.
+ */
+public class Replay {
+
+	/**
+	 * @brief Moves between keyframes used by Controller when recording
+	 */
+	public static final int DEFAULT_INTERVAL = 1024;
+
+	private static final int MAGIC = 0x32305250; // "20RP"
+	private static final int HEADER_SIZE = 32;
+	private static final int FOOTER_SIZE = 16;
+
+	/**
+	 * @brief Writes a game to a file as it is played through GameBoard
+	 * @details The first keyframe is taken from GameBoard when the recorder
+	 * is created, so it should be created right after GameBoard.init
+	 */
+	public static class Recorder implements Closeable {
+		private final DataOutputStream out;
+		private final int cols, interval;
+		private final byte[] cells;
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		private final byte[] chunk = new byte[1 << 16];
+		private long[] offsets = new long[16];
+		private int keyframes;
+		private long moves;
+		private long offset;
+
+		/**
+		 * @brief Starts recording the game on GameBoard
+		 * @param file Path of the file, which is replaced
+		 * @param rows Integer representing the number of rows in the board
+		 * @param cols Integer representing the number of columns in the board
+		 * @param interval Number of moves between keyframes
+		 * @param rules Rules of the game
+		 * @throws IllegalArgumentException If the interval is less than 1, or
+		 * the board has more than 2^28 cells
+		 * @throws IOException If the file cannot be written
+		 */
+		public Recorder(Path file, int rows, int cols, int interval, Rules rules) throws IOException {
+			if (interval < 1) {
+				throw new IllegalArgumentException("The interval must be at least 1");
+			}
+			if ((long) rows * cols > 1 << 28) {
+				throw new IllegalArgumentException("A move cannot hold a cell of a board this large");
+			}
+			this.cols = cols;
+			this.interval = interval;
+			this.cells = new byte[rows * cols];
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(rows);
+			out.writeInt(cols);
+			out.writeInt(interval);
+			out.writeInt(rules.getWinTile());
+			out.writeInt(rules.keepPlaying() ? 1 : 0);
+			out.writeDouble(rules.getFourChance());
+			offset = HEADER_SIZE;
+			writeKeyframe();
+		}
+
+		/**
+		 * @brief Records a move, once its new tile (if any) has been added
+		 * @details Moves that do not change the board should not be recorded
+		 * @param dir Direction of the move (BitBoard.UP, DOWN, LEFT or RIGHT)
+		 * @param cell Cell returned by GameBoard.addRandomTile, or -1 if no
+		 * tile was added after the move
+		 * @throws IOException If the file cannot be written
+		 */
+		public void move(int dir, int cell) throws IOException {
+			int code = dir;
+			if (cell >= 0) {
+				int tile = GameBoard.getTile(cell / cols, cell % cols);
+				code |= Integer.numberOfTrailingZeros(tile) << 2 | cell << 4;
+			}
+			out.writeInt(code);
+			offset += 4;
+			moves++;
+			if (moves % interval == 0) {
+				writeKeyframe();
+			}
+		}
+
+		/**
+		 * @brief Gets the number of moves recorded
+		 * @return Number of moves
+		 */
+		public long moves() {
+			return moves;
+		}
+
+		private void writeKeyframe() throws IOException {
+			GameBoard.copyExponents(cells);
+			deflater.reset();
+			deflater.setInput(cells);
+			deflater.finish();
+			frame.reset();
+			while (!deflater.finished()) {
+				frame.write(chunk, 0, deflater.deflate(chunk));
+			}
+			if (keyframes == offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2 * keyframes);
+			}
+			offsets[keyframes++] = offset;
+			out.writeLong(GameBoard.getScore());
+			out.writeInt(frame.size());
+			frame.writeTo(out);
+			offset += 12 + frame.size();
+		}
+
+		/**
+		 * @brief Writes the keyframe offsets and closes the file
+		 * @throws IOException If the file cannot be written
+		 */
+		public void close() throws IOException {
+			for (int k=0; k<keyframes; k++) {
+				out.writeLong(offsets[k]);
+			}
+			out.writeLong(moves);
+			out.writeInt(keyframes);
+			out.writeInt(MAGIC);
+			out.close();
+			deflater.end();
+		}
+	}
+
+	private final FileChannel channel;
+	private final int rows, cols, interval;
+	private final Rules rules;
+	private final long moves;
+	private final long[] offsets;
+	private final byte[] cells;
+	private ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+
+	private Replay(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		ByteBuffer h = read(0, HEADER_SIZE);
+		if (size < HEADER_SIZE + FOOTER_SIZE || h.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a replay file");
+		}
+		rows = h.getInt(4);
+		cols = h.getInt(8);
+		interval = h.getInt(12);
+		if (rows < 1 || cols < 1 || (long) rows * cols > 1 << 28 || interval < 1) {
+			throw new IllegalArgumentException("The replay header is damaged");
+		}
+		rules = new Rules(h.getInt(16), h.getInt(20) != 0, h.getDouble(24));
+
+		ByteBuffer f = read(size - FOOTER_SIZE, FOOTER_SIZE);
+		if (f.getInt(12) != MAGIC) {
+			throw new IllegalArgumentException("The replay file was not closed");
+		}
+		// the recorder writes a keyframe at the start and after every interval moves
+		moves = f.getLong(0);
+		int keyframes = f.getInt(8);
+		long indexStart = size - FOOTER_SIZE - 8L * keyframes;
+		if (moves < 0 || keyframes != 1 + moves / interval || indexStart < HEADER_SIZE) {
+			throw new IllegalArgumentException("The replay footer is damaged");
+		}
+		offsets = new long[keyframes];
+		ByteBuffer index = read(indexStart, 8 * keyframes);
+		for (int k=0; k<keyframes; k++) {
+			offsets[k] = index.getLong(8 * k);
+			long min = k == 0 ? HEADER_SIZE : offsets[k-1] + 12;
+			if (offsets[k] < min || offsets[k] > indexStart - 12) {
+				throw new IllegalArgumentException("The replay footer is damaged");
+			}
+		}
+		cells = new byte[rows * cols];
+	}
+
+	/**
+	 * @brief Opens a recorded game
+	 * @param file Path of the replay file
+	 * @return The replay
+	 * @throws IllegalArgumentException If the file is not a complete replay
+	 * @throws IOException If the file cannot be read
+	 */
+	public static Replay open(Path file) throws IOException {
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new Replay(ch);
+		}
+		catch (IllegalArgumentException | IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Gets the number of moves in the game
+	 * @return Number of moves
+	 */
+	public long moves() {
+		return moves;
+	}
+
+	/**
+	 * @brief Gets the number of keyframes in the file
+	 * @return Number of keyframes
+	 */
+	public int keyframes() {
+		return offsets.length;
+	}
+
+	/**
+	 * @brief Sets up GameBoard as it was after a move of the game
+	 * @details Restores the nearest keyframe at or before the move and plays
+	 * the moves after it, placing the tiles that were recorded
+	 * @param move Number of moves played, from 0 for the start of the game
+	 * to moves() for its end
+	 * @throws IllegalArgumentException If the move is outside the game
+	 * @throws IOException If the file cannot be read
+	 */
+	public void seek(long move) throws IOException {
+		if (move < 0 || move > moves) {
+			throw new IllegalArgumentException("The game has no move " + move);
+		}
+		int k = (int) Math.min(move / interval, offsets.length - 1);
+		ByteBuffer h = read(offsets[k], 12);
+		long score = h.getLong(0);
+		int len = h.getInt(8);
+		if (len < 0 || len > channel.size()) {
+			throw new IllegalArgumentException("Keyframe " + k + " is damaged");
+		}
+		ByteBuffer frame = read(offsets[k] + 12, len);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(frame.array(), 0, len);
+			if (inflater.inflate(cells) != cells.length) {
+				throw new IllegalArgumentException("Keyframe " + k + " is damaged");
+			}
+		}
+		catch (DataFormatException e) {
+			throw new IllegalArgumentException("Keyframe " + k + " is damaged");
+		}
+		finally {
+			inflater.end();
+		}
+		GameBoard.init(cells, rows, cols, score, rules);
+
+		int tail = (int) (move - (long) k * interval);
+		ByteBuffer codes = read(offsets[k] + 12 + len, 4 * tail);
+		for (int i=0; i<tail; i++) {
+			int code = codes.getInt(4 * i);
+			switch (code & 3) {
+				case BitBoard.UP: GameBoard.shiftUp(); break;
+				case BitBoard.DOWN: GameBoard.shiftDown(); break;
+				case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+				default: GameBoard.shiftRight(); break;
+			}
+			int exp = (code >>> 2) & 3;
+			if (exp != 0) {
+				int cell = code >>> 4;
+				GameBoard.placeTile(cell / cols, cell % cols, 1 << exp);
+			}
+		}
+		GameBoard.checkGameOver();
+	}
+
+	/**
+	 * @brief Closes the file
+	 * @throws IOException If the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// reads bytes at a position into the shared buffer, growing it if needed
+	private ByteBuffer read(long pos, int len) throws IOException {
+		if (buf.capacity() < len) {
+			buf = ByteBuffer.allocate(Math.max(len, 2 * buf.capacity()));
+		}
+		buf.clear().limit(len);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, pos + buf.position()) < 0) {
+				throw new IllegalArgumentException("The replay file is cut short");
+			}
+		}
+		return buf;
+	}
+
+	/**
+	 * @brief Shows the board of a recorded game after a move
+	 * @details Usage: java Replay <file> <move>
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java Replay <file> <move>");
+			System.exit(1);
+		}
+		Replay r = open(Paths.get(args[0]));
+		long start = System.nanoTime();
+		r.seek(Long.parseLong(args[1]));
+		double ms = (System.nanoTime() - start) / 1e6;
+		UserInterface.printScore(GameBoard.getScore(), GameBoard.getHighScore());
+		UserInterface.printBoard(GameBoard.getBoard());
+		System.out.printf("Move %s of %,d, reached in %.2f ms%n", args[1], r.moves(), ms);
+		r.close();
+	}
+}
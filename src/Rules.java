@@ -0,0 +1,70 @@
+/**
+ * @file Rules.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a class for the configurable rules of a 2048 game
+ * @date Apr. 12th, 2021
+ */
+
+/**
+ * @brief An immutable set of rules for a game variant
+ * @details The rules decide which tile wins the game, whether the game
+ * ends once that tile is reached, and how often new tiles are 4 instead of 2.
+ * GameBoard reads the rules once, when the game is initialized, and copies
+ * them into plain fields. The rules are never looked up during a move.
+ */
+public class Rules {
+
+	/**
+	 * @brief The standard rules: reach 2048 to win, which ends the game,
+	 * and new tiles have a 10% chance of being a 4
+	 */
+	public static final Rules STANDARD = new Rules(2048, false, 0.1);
+
+	private final int winTile;
+	private final boolean keepPlaying;
+	private final double fourChance;
+
+	/**
+	 * @brief Constructs a set of rules
+	 * @param winTile Integer representing the tile that wins the game
+	 * @param keepPlaying True if the game continues after the winning tile is reached
+	 * @param fourChance Probability between 0 and 1 that a new tile is a 4
+	 * @throws IllegalArgumentException If the winning tile is not a power of 2
+	 * greater than 4, or the probability is not between 0 and 1
+	 */
+	public Rules(int winTile, boolean keepPlaying, double fourChance) {
+		if (winTile <= 4 || Integer.bitCount(winTile) != 1) {
+			throw new IllegalArgumentException("The winning tile must be a power of 2 greater than 4");
+		}
+		if (!(fourChance >= 0 && fourChance <= 1)) {
+			throw new IllegalArgumentException("The chance of a 4 must be between 0 and 1");
+		}
+		this.winTile = winTile;
+		this.keepPlaying = keepPlaying;
+		this.fourChance = fourChance;
+	}
+
+	/**
+	 * @brief Gets the tile that wins the game
+	 * @return Integer representing the winning tile
+	 */
+	public int getWinTile() {
+		return winTile;
+	}
+
+	/**
+	 * @brief Gets whether the game continues once the winning tile is reached
+	 * @return True if the game continues after a win, False otherwise
+	 */
+	public boolean keepPlaying() {
+		return keepPlaying;
+	}
+
+	/**
+	 * @brief Gets the chance of a new tile being a 4
+	 * @return Probability between 0 and 1 that a new tile is a 4
+	 */
+	public double getFourChance() {
+		return fourChance;
+	}
+}
@@ -0,0 +1,463 @@
+/**
+ * @file SparseBoard.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a board that stores only its tiles, for mostly empty large boards
+ * @date Apr. 12th, 2021
+ */
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * @brief A board of any size that keeps a sorted list of the tiles in each line
+ * @details Each line holds the positions of its tiles in increasing order
+ * and their values, in primitive arrays. A move only visits the tiles and
+ * the line headers, so early in a game on a huge board it costs far less
+ * than scanning every cell. The lines are rows for horizontal moves and
+ * columns for vertical moves; changing between the two regroups the tiles
+ * by their other coordinate, which keeps them sorted without a sort. Once
+ * the share of occupied cells goes above a threshold the board switches to
+ * dense storage in a TiledBoard for the rest of its life, as games rarely
+ * empty out again. Moves follow the same rules as GameBoard.
+ */
+public class SparseBoard {
+
+	/**
+	 * @brief Default share of occupied cells above which the board becomes dense
+	 * @details Moves on a 1024x1024 board cost about the same either way at
+	 * around a third of the cells occupied, and spawns favour the sparse lists.
+	 */
+	public static final double DEFAULT_THRESHOLD = 0.25;
+
+	private static final int[] NONE = new int[0];
+
+	private final int rows, cols;
+	private final double threshold;
+
+	// the lines, which are columns when transposed
+	private int[][] pos, val;
+	private int[] len;
+	private boolean transposed;
+	private int tiles;
+
+	// lines of the other orientation, reused when turning
+	private int[][] sparePos, spareVal;
+	private int[] spareLen;
+
+	// set once the board has switched to dense storage
+	private TiledBoard dense;
+
+	/**
+	 * @brief Constructs an empty board with the default threshold
+	 * @param rows Integer representing the number of rows
+	 * @param cols Integer representing the number of columns
+	 */
+	public SparseBoard(int rows, int cols) {
+		this(rows, cols, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @brief Constructs an empty board
+	 * @param rows Integer representing the number of rows
+	 * @param cols Integer representing the number of columns
+	 * @param threshold Share of occupied cells above which the board becomes
+	 * dense, where 1 keeps it sparse even when full
+	 * @throws IllegalArgumentException If a size is less than 1 or the
+	 * threshold is not in (0, 1]
+	 */
+	public SparseBoard(int rows, int cols, double threshold) {
+		if (rows < 1 || cols < 1) {
+			throw new IllegalArgumentException("A board needs at least one row and column");
+		}
+		if (!(threshold > 0 && threshold <= 1)) {
+			throw new IllegalArgumentException("The threshold must be in (0, 1]");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.threshold = threshold;
+		this.pos = newLines(rows);
+		this.val = newLines(rows);
+		this.len = new int[rows];
+	}
+
+	/**
+	 * @brief Constructs a board holding a copy of the given cells
+	 * @param b 2D array of integers representing the board
+	 * @param threshold Share of occupied cells above which the board becomes dense
+	 */
+	public SparseBoard(int[][] b, double threshold) {
+		this(b.length, b[0].length, threshold);
+		for (int r=0; r<rows; r++) {
+			for (int c=0; c<cols; c++) {
+				if (b[r][c] != 0) {
+					insert(r, len[r], c, b[r][c]);
+				}
+			}
+		}
+		checkDensity();
+	}
+
+	/**
+	 * @brief Gets the number of rows
+	 * @return Number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @brief Gets the number of columns
+	 * @return Number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * @brief Gets whether the board has switched to dense storage
+	 * @return True if the board is dense
+	 */
+	public boolean isDense() {
+		return dense != null;
+	}
+
+	/**
+	 * @brief Gets the number of tiles on the board
+	 * @details This scans every cell once the board is dense
+	 * @return Number of non-empty cells
+	 */
+	public int getTileCount() {
+		if (dense == null) {
+			return tiles;
+		}
+		int n = 0;
+		for (int r=0; r<rows; r++) {
+			for (int c=0; c<cols; c++) {
+				if (dense.get(r, c) != 0) {
+					n++;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @brief Gets the value of a cell
+	 * @param r Row of the cell
+	 * @param c Column of the cell
+	 * @return Value of the tile, or 0 if the cell is empty
+	 */
+	public int get(int r, int c) {
+		if (dense != null) {
+			return dense.get(r, c);
+		}
+		int line = transposed ? c : r;
+		int i = Arrays.binarySearch(pos[line], 0, len[line], transposed ? r : c);
+		return i >= 0 ? val[line][i] : 0;
+	}
+
+	/**
+	 * @brief Sets the value of a cell
+	 * @param r Row of the cell
+	 * @param c Column of the cell
+	 * @param v Value of the tile, or 0 to empty the cell
+	 */
+	public void set(int r, int c, int v) {
+		if (dense != null) {
+			dense.set(r, c, v);
+			return;
+		}
+		int line = transposed ? c : r;
+		int p = transposed ? r : c;
+		int n = len[line];
+		int i = Arrays.binarySearch(pos[line], 0, n, p);
+		if (i >= 0) {
+			if (v != 0) {
+				val[line][i] = v;
+			}
+			else {
+				// close the gap
+				System.arraycopy(pos[line], i+1, pos[line], i, n-i-1);
+				System.arraycopy(val[line], i+1, val[line], i, n-i-1);
+				len[line]--;
+				tiles--;
+			}
+		}
+		else if (v != 0) {
+			insert(line, -i-1, p, v);
+			checkDensity();
+		}
+	}
+
+	/**
+	 * @brief Gets the largest tile on the board
+	 * @return Value of the largest tile, or 0 if the board is empty
+	 */
+	public int maxTile() {
+		int max = 0;
+		if (dense != null) {
+			for (int r=0; r<rows; r++) {
+				for (int c=0; c<cols; c++) {
+					max = Math.max(max, dense.get(r, c));
+				}
+			}
+			return max;
+		}
+		for (int line=0; line<len.length; line++) {
+			for (int i=0; i<len[line]; i++) {
+				max = Math.max(max, val[line][i]);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @brief Moves all tiles in a direction
+	 * @param dir Direction to move in (BitBoard.UP, DOWN, LEFT or RIGHT)
+	 * @return Total value of the merged tiles
+	 */
+	public long move(int dir) {
+		if (dense != null) {
+			return dense.move(dir);
+		}
+		boolean vertical = dir == BitBoard.UP || dir == BitBoard.DOWN;
+		if (vertical != transposed) {
+			turn();
+		}
+		int lineLength = vertical ? rows : cols;
+		boolean reverse = dir == BitBoard.DOWN || dir == BitBoard.RIGHT;
+		long gained = 0;
+		for (int line=0; line<len.length; line++) {
+			if (len[line] > 0) {
+				gained += slide(line, lineLength, reverse);
+			}
+		}
+		return gained;
+	}
+
+	/**
+	 * @brief Gets whether any move is possible
+	 * @return True if there is an empty cell or two equal neighbouring tiles
+	 */
+	public boolean canMove() {
+		if (dense != null) {
+			return dense.canMove();
+		}
+		if (tiles < rows * cols) {
+			return true;
+		}
+		// every line is full, so the tile at index i of a line is in position i
+		for (int line=0; line<len.length; line++) {
+			int[] v = val[line];
+			for (int i=0; i<len[line]; i++) {
+				if ((i+1 < len[line] && v[i+1] == v[i]) || (line+1 < len.length && val[line+1][i] == v[i])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @brief Changes a random empty cell to a 2 or a 4
+	 * @details The random numbers are drawn and used as in
+	 * GameBoard.addRandomTile and BitBoard.spawn: first the cell, then the
+	 * value. Empty cells are counted in row order, or in column order while
+	 * the board is transposed.
+	 * @param rand Random number generator
+	 * @param fourChance Probability of a 4
+	 * @return Index of the cell (row * columns + column), or -1 if the board is full
+	 */
+	public int spawn(RandomGenerator rand, double fourChance) {
+		int empty = rows * cols - getTileCount();
+		if (empty == 0) {
+			return -1;
+		}
+		int k = (int) (rand.nextDouble() * empty);
+		int v = rand.nextDouble() >= 1 - fourChance ? 4 : 2;
+
+		if (dense != null) {
+			for (int r=0; r<rows; r++) {
+				for (int c=0; c<cols; c++) {
+					if (dense.get(r, c) == 0 && k-- == 0) {
+						dense.set(r, c, v);
+						return r * cols + c;
+					}
+				}
+			}
+		}
+
+		// find the line holding the k-th empty cell, then the gap within it
+		int lineLength = transposed ? rows : cols;
+		int line = 0;
+		while (k >= lineLength - len[line]) {
+			k -= lineLength - len[line];
+			line++;
+		}
+		// before the tile at index i there are pos[i] - i empty cells
+		int[] p = pos[line];
+		int i = 0;
+		while (i < len[line] && p[i] - i <= k) {
+			i++;
+		}
+		int at = k + i;
+		insert(line, i, at, v);
+		checkDensity();
+		return transposed ? at * cols + line : line * cols + at;
+	}
+
+	/**
+	 * @brief Copies the cells into a 2D array
+	 * @param b 2D array of integers of the same size as this board
+	 */
+	public void copyTo(int[][] b) {
+		if (dense != null) {
+			dense.copyTo(b);
+			return;
+		}
+		for (int[] row : b) {
+			Arrays.fill(row, 0);
+		}
+		for (int line=0; line<len.length; line++) {
+			for (int i=0; i<len[line]; i++) {
+				if (transposed) {
+					b[pos[line][i]][line] = val[line][i];
+				}
+				else {
+					b[line][pos[line][i]] = val[line][i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @brief Gets the cells as a new 2D array
+	 * @return 2D array of integers representing the board
+	 */
+	public int[][] toArray() {
+		int[][] b = new int[rows][cols];
+		copyTo(b);
+		return b;
+	}
+
+	// slides the tiles of one line in place, with the same merges as GameBoard.slideLine
+	private long slide(int line, int lineLength, boolean reverse) {
+		int[] p = pos[line], v = val[line];
+		int n = len[line];
+		long gained = 0;
+		int w = 0;
+		boolean canMerge = false;
+		// when sliding toward the end, walk the tiles from the end and write
+		// them backwards from index n-1
+		for (int k=0; k<n; k++) {
+			int x = v[reverse ? n-1-k : k];
+			int last = reverse ? n-w : w-1;
+			if (canMerge && v[last] == x) {
+				v[last] = 2*x;
+				gained += 2*x;
+				canMerge = false;
+			}
+			else {
+				v[reverse ? n-1-w : w] = x;
+				w++;
+				canMerge = true;
+			}
+		}
+		if (reverse && w < n) {
+			System.arraycopy(v, n-w, v, 0, w);
+		}
+		int first = reverse ? lineLength - w : 0;
+		for (int i=0; i<w; i++) {
+			p[i] = first + i;
+		}
+		tiles -= n - w;
+		len[line] = w;
+		return gained;
+	}
+
+	// regroups the tiles into lines of the other orientation
+	private void turn() {
+		int lines = transposed ? rows : cols;
+		if (sparePos == null) {
+			sparePos = newLines(lines);
+			spareVal = newLines(lines);
+			spareLen = new int[lines];
+		}
+		// size the new lines, then fill them in order, which keeps them sorted
+		Arrays.fill(spareLen, 0);
+		for (int line=0; line<len.length; line++) {
+			for (int i=0; i<len[line]; i++) {
+				spareLen[pos[line][i]]++;
+			}
+		}
+		for (int line=0; line<lines; line++) {
+			if (sparePos[line].length < spareLen[line]) {
+				int cap = Math.max(4, Integer.highestOneBit(spareLen[line]) << 1);
+				sparePos[line] = new int[cap];
+				spareVal[line] = new int[cap];
+			}
+			spareLen[line] = 0;
+		}
+		for (int line=0; line<len.length; line++) {
+			for (int i=0; i<len[line]; i++) {
+				int to = pos[line][i];
+				int j = spareLen[to]++;
+				sparePos[to][j] = line;
+				spareVal[to][j] = val[line][i];
+			}
+		}
+
+		int[][] t = pos;
+		pos = sparePos;
+		sparePos = t;
+		t = val;
+		val = spareVal;
+		spareVal = t;
+		int[] l = len;
+		len = spareLen;
+		spareLen = l;
+		transposed = !transposed;
+	}
+
+	private void insert(int line, int i, int p, int v) {
+		int n = len[line];
+		if (n == pos[line].length) {
+			int cap = Math.max(4, 2*n);
+			pos[line] = Arrays.copyOf(pos[line], cap);
+			val[line] = Arrays.copyOf(val[line], cap);
+		}
+		System.arraycopy(pos[line], i, pos[line], i+1, n-i);
+		System.arraycopy(val[line], i, val[line], i+1, n-i);
+		pos[line][i] = p;
+		val[line][i] = v;
+		len[line]++;
+		tiles++;
+	}
+
+	// switches to dense storage once too many cells are occupied
+	private void checkDensity() {
+		if (tiles <= threshold * rows * cols) {
+			return;
+		}
+		TiledBoard d = new TiledBoard(rows, cols);
+		for (int line=0; line<len.length; line++) {
+			for (int i=0; i<len[line]; i++) {
+				if (transposed) {
+					d.set(pos[line][i], line, val[line][i]);
+				}
+				else {
+					d.set(line, pos[line][i], val[line][i]);
+				}
+			}
+		}
+		dense = d;
+		pos = val = sparePos = spareVal = null;
+		len = spareLen = null;
+	}
+
+	private static int[][] newLines(int n) {
+		int[][] lines = new int[n][];
+		Arrays.fill(lines, NONE);
+		return lines;
+	}
+}
@@ -0,0 +1,368 @@
+/**
+ * @file Tablebase.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains an endgame tablebase for restricted 4x4 positions
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @brief Values of optimal play for 4x4 boards whose tiles are capped
+ * @details The tablebase covers every board whose tile exponents are at
+ * most a cap (for example a cap of 2 allows only 2s and 4s). The value of a
+ * board, with the player to move, is the probability of creating a tile with
+ * exponent cap+1 when playing optimally, using the moves of GameBoard (through
+ * BitBoard) and the spawn chance of the rules. Every move adds a tile, so the
+ * sum of the tiles grows with each turn and the recursion always ends.
+ *
+ * Values are stored in a file with one float per board, indexed by reading the
+ * 16 exponents as a number in base cap+1, and the file is memory-mapped so
+ * that probes are O(1). Each entry holds the bits of its value inverted, so
+ * that the zeros of a new file mark boards not solved yet while every value
+ * keeps the full precision of a float (a relative error of about 6e-8). The build runs in parallel over chunks of the index,
+ * and records the chunks that are done in the file header so that an
+ * interrupted build resumes from where it stopped.
+ */
+public class Tablebase {
+
+	private static final int MAGIC = 0x32305442; // "20TB"
+	static final int HEADER_SIZE = 64;
+	static final int CHUNK = 1 << 16;
+
+	// entries per mapped segment, since a single mapping is limited to 2 GB
+	private static final int SEGMENT_BITS = 28;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final int cap;
+	private final long size;
+	private final double fourChance;
+
+	private Tablebase(FileChannel channel, int cap, double fourChance, FileChannel.MapMode mode)
+			throws IOException {
+		this.channel = channel;
+		this.cap = cap;
+		this.fourChance = fourChance;
+
+		long n = 1;
+		for (int i=0; i<16; i++) {
+			n *= cap + 1;
+		}
+		this.size = n;
+
+		int count = (int) ((n + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+		segments = new MappedByteBuffer[count];
+		for (int s=0; s<count; s++) {
+			long first = (long) s << SEGMENT_BITS;
+			long len = Math.min(1L << SEGMENT_BITS, n - first) * 4;
+			segments[s] = channel.map(mode, HEADER_SIZE + first*4, len);
+			segments[s].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * @brief Builds a tablebase, or resumes an interrupted build
+	 * @param file Path of the tablebase file
+	 * @param cap Largest exponent allowed on the board, from 2 to 3
+	 * @param rules Rules giving the chance of a new tile being a 4
+	 * @param threads Number of threads to build with
+	 * @return The completed tablebase, ready to be probed
+	 * @throws IllegalArgumentException If the cap is out of range, or the file is
+	 * not empty and does not hold a tablebase with the same cap and rules
+	 * @throws IOException If the file cannot be read or written
+	 */
+	public static Tablebase build(Path file, int cap, Rules rules, int threads) throws IOException {
+		if (cap < 2 || cap > 3) {
+			throw new IllegalArgumentException("The cap must be 2 or 3");
+		}
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long chunksDone = 0;
+			if (ch.size() > 0) {
+				ByteBuffer h = readHeader(ch);
+				if (h.getInt(4) != cap || h.getDouble(8) != rules.getFourChance()) {
+					throw new IllegalArgumentException("The file holds a different tablebase");
+				}
+				chunksDone = h.getLong(16);
+			}
+			else {
+				writeHeader(ch, cap, rules.getFourChance(), 0);
+			}
+
+			Tablebase tb = new Tablebase(ch, cap, rules.getFourChance(), FileChannel.MapMode.READ_WRITE);
+			long chunks = (tb.size + CHUNK - 1) / CHUNK;
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				// work through the chunks a round at a time, recording progress after each round
+				int perRound = threads * 16;
+				while (chunksDone < chunks) {
+					long end = Math.min(chunks, chunksDone + perRound);
+					pool.invoke(tb.new ChunkTask(chunksDone, end));
+					for (MappedByteBuffer seg : tb.segments) {
+						seg.force();
+					}
+					chunksDone = end;
+					writeHeader(ch, cap, rules.getFourChance(), chunksDone);
+				}
+			}
+			finally {
+				pool.shutdown();
+			}
+			return tb;
+		}
+		catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Opens a completed tablebase for probing
+	 * @param file Path of the tablebase file
+	 * @return The tablebase
+	 * @throws IllegalArgumentException If the file does not hold a completed tablebase
+	 * @throws IOException If the file cannot be read
+	 */
+	public static Tablebase open(Path file) throws IOException {
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer h = readHeader(ch);
+			int cap = h.getInt(4);
+			if (cap < 2 || cap > 3) {
+				throw new IllegalArgumentException("Not a tablebase file");
+			}
+			Tablebase tb = new Tablebase(ch, cap, h.getDouble(8), FileChannel.MapMode.READ_ONLY);
+			if (h.getLong(16) < (tb.size + CHUNK - 1) / CHUNK) {
+				throw new IllegalArgumentException("The tablebase is not complete");
+			}
+			return tb;
+		}
+		catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @brief Gets the value of a board
+	 * @param board The packed board, with the player to move
+	 * @return Probability of reaching a tile with exponent cap+1 with optimal play
+	 * @throws IllegalArgumentException If the board has a tile above the cap
+	 */
+	public float probe(long board) {
+		int bits = get(index(board));
+		if (bits == 0) {
+			// only possible while building, probes of a complete table always hit
+			return solve(board);
+		}
+		return Float.intBitsToFloat(~bits);
+	}
+
+	/**
+	 * @brief Gets the best move for a board
+	 * @param board The packed board, with the player to move
+	 * @return The direction with the highest value, or -1 if there is no move
+	 */
+	public int bestMove(long board) {
+		int best = -1;
+		double bestValue = -1;
+		for (int dir=0; dir<4; dir++) {
+			long next = BitBoard.move(board, dir);
+			if (next != board) {
+				double v = afterMove(next);
+				if (v > bestValue) {
+					bestValue = v;
+					best = dir;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @brief Gets the largest exponent allowed on the board
+	 * @return The cap
+	 */
+	public int getCap() {
+		return cap;
+	}
+
+	/**
+	 * @brief Gets the number of boards in the tablebase
+	 * @return Number of entries
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @brief Closes the file holding the tablebase
+	 * @throws IOException If the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// solves every board in a range of chunks, splitting the range between threads
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final long from, to;
+
+		ChunkTask(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				long mid = (from + to) >>> 1;
+				invokeAll(new ChunkTask(from, mid), new ChunkTask(mid, to));
+				return;
+			}
+			long end = Math.min(size, to * CHUNK);
+			for (long i=from*CHUNK; i<end; i++) {
+				if (Tablebase.this.get(i) == 0) {
+					put(i, solve(board(i)));
+				}
+			}
+		}
+	}
+
+	// value of a board with the player to move, storing it and every board below it
+	private float solve(long board) {
+		float best = 0;
+		for (int dir=0; dir<4 && best < 1; dir++) {
+			long next = BitBoard.move(board, dir);
+			if (next != board) {
+				best = Math.max(best, afterMove(next));
+			}
+		}
+		return best;
+	}
+
+	// value of a board just after a move, before a tile is added
+	private float afterMove(long next) {
+		if (BitBoard.maxExponent(next) > cap) {
+			return 1;
+		}
+		int empty = BitBoard.countEmpty(next);
+		double total = 0;
+		for (int i=0; i<16; i++) {
+			if (((next >>> (4*i)) & 0xF) == 0) {
+				total += (1 - fourChance) * lookup(next | (1L << (4*i)));
+				total += fourChance * lookup(next | (2L << (4*i)));
+			}
+		}
+		return (float) (total / empty);
+	}
+
+	// value of a board, solving and storing it if it is not yet known
+	private float lookup(long board) {
+		long i = index(board);
+		int bits = get(i);
+		if (bits == 0) {
+			float v = solve(board);
+			// another thread may store the same value, which is harmless
+			put(i, v);
+			return v;
+		}
+		return Float.intBitsToFloat(~bits);
+	}
+
+	/**
+	 * @brief Gets the index of a board in the table
+	 * @param board The packed board
+	 * @return Index of the board
+	 * @throws IllegalArgumentException If the board has a tile above the cap
+	 */
+	long index(long board) {
+		long idx = 0;
+		for (int i=15; i>=0; i--) {
+			int e = (int) (board >>> (4*i)) & 0xF;
+			if (e > cap) {
+				throw new IllegalArgumentException("Tile above the tablebase cap");
+			}
+			idx = idx * (cap + 1) + e;
+		}
+		return idx;
+	}
+
+	// the board at an index, the reverse of index
+	private long board(long idx) {
+		long board = 0;
+		for (int i=0; i<16; i++) {
+			board |= (idx % (cap + 1)) << (4*i);
+			idx /= cap + 1;
+		}
+		return board;
+	}
+
+	// entries hold the inverted bits of the value, so that 0 marks a board not
+	// solved yet; the bits of a value from 0 to 1 are never all ones
+	private int get(long i) {
+		return segments[(int) (i >>> SEGMENT_BITS)].getInt((int) (i & ((1 << SEGMENT_BITS) - 1)) * 4);
+	}
+
+	private void put(long i, float v) {
+		segments[(int) (i >>> SEGMENT_BITS)].putInt((int) (i & ((1 << SEGMENT_BITS) - 1)) * 4,
+				~Float.floatToRawIntBits(v));
+	}
+
+	private static ByteBuffer readHeader(FileChannel ch) throws IOException {
+		ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (h.hasRemaining()) {
+			if (ch.read(h, h.position()) < 0) {
+				break;
+			}
+		}
+		if (h.hasRemaining() || h.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a tablebase file");
+		}
+		return h;
+	}
+
+	private static void writeHeader(FileChannel ch, int cap, double fourChance, long chunksDone) throws IOException {
+		ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		h.putInt(0, MAGIC);
+		h.putInt(4, cap);
+		h.putDouble(8, fourChance);
+		h.putLong(16, chunksDone);
+		ch.write(h, 0);
+		ch.force(false);
+	}
+
+	/**
+	 * @brief Builds or resumes a tablebase from the command line
+	 * @details Usage: java Tablebase <file> [cap] [threads]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java Tablebase <file> [cap] [threads]");
+			System.exit(1);
+		}
+		int cap = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		Tablebase tb = build(Paths.get(args[0]), cap, Rules.STANDARD, threads);
+		System.out.printf("Built %,d entries in %.1f s, file size %,d bytes%n",
+				tb.size(), (System.nanoTime() - start) / 1e9, tb.channel.size());
+
+		System.out.printf("Value of a board with a single 2: %.6f%n", tb.probe(1L));
+		tb.close();
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases checking that the move loop of the Model does not allocate
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestAllocation
+{
+	// bytes each operation may allocate per call, on average, once warmed up
+	private static final double BUDGET = 1.0;
+
+	private static final String[] OPS = {"shift", "addRandomTile", "checkGameOver"};
+
+	private com.sun.management.ThreadMXBean mx;
+	private long[] bytes, calls;
+	private int seed;
+
+	@Before
+	public void setUp()
+	{
+		mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		bytes = new long[OPS.length];
+		calls = new long[OPS.length];
+		seed = 1;
+		GameBoard.setSeed(1);
+	}
+
+	@After
+	public void tearDown()
+	{
+		GameBoard.init(4, 4);
+		GameBoard.resetHighScore();
+	}
+
+	@Test
+	// Random games on the standard board
+	public void testStandardBoard()
+	{
+		checkBudget(4, 2000, 500);
+	}
+
+	@Test
+	// Random games on a larger board, where the lines are longer than 4
+	public void testLargeBoard()
+	{
+		checkBudget(16, 20, 5);
+	}
+
+	@Test
+	// The methods the Verifier plays games with, on a board of its own; addRandomTile
+	// above runs the same spawn code on the game board
+	public void testStaticMethods()
+	{
+		if (!mx.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		mx.setThreadAllocatedMemoryEnabled(true);
+		Random rand = new Random(1);
+		byte[] cells = new byte[16];
+		playStatic(cells, rand, 2000);
+		long start = mx.getCurrentThreadAllocatedBytes();
+		long moves = playStatic(cells, rand, 500);
+		double perMove = (double) (mx.getCurrentThreadAllocatedBytes() - start) / moves;
+		assertTrue(String.format("The static move loop allocates %.1f bytes per move", perMove), perMove <= BUDGET);
+	}
+
+	// plays games with GameBoard.move, spawn and canMove, returning the number of moves
+	private long playStatic(byte[] cells, Random rand, int games)
+	{
+		long moves = 0;
+		for (int g=0; g<games; g++) {
+			Arrays.fill(cells, (byte) 0);
+			GameBoard.spawn(cells, rand, Rules.STANDARD);
+			GameBoard.spawn(cells, rand, Rules.STANDARD);
+			while (GameBoard.canMove(cells, 4, 4)) {
+				if (GameBoard.move(cells, 4, 4, nextMove()) >= 0) {
+					GameBoard.spawn(cells, rand, Rules.STANDARD);
+				}
+				moves++;
+			}
+		}
+		return moves;
+	}
+
+	// plays games to warm up, then plays more while counting the bytes each
+	// operation allocates, and fails naming any operation over the budget
+	private void checkBudget(int size, int warmup, int games)
+	{
+		if (!mx.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+		mx.setThreadAllocatedMemoryEnabled(true);
+		play(size, warmup, false);
+		play(size, games, true);
+
+		StringBuilder over = new StringBuilder();
+		for (int i=0; i<OPS.length; i++) {
+			assertTrue(calls[i] > 0);
+			double perCall = (double) bytes[i] / calls[i];
+			if (perCall > BUDGET) {
+				over.append(String.format(" %s allocates %.1f bytes per call;", OPS[i], perCall));
+			}
+		}
+		assertTrue("Over the allocation budget on " + size + "x" + size + ":" + over, over.length() == 0);
+	}
+
+	private void play(int size, int games, boolean measure)
+	{
+		for (int g=0; g<games; g++) {
+			GameBoard.init(size, size);
+			while (GameBoard.getStatus()) {
+				int dir = nextMove();
+				long start = measure ? mx.getCurrentThreadAllocatedBytes() : 0;
+				switch (dir) {
+					case 0: GameBoard.shiftUp(); break;
+					case 1: GameBoard.shiftDown(); break;
+					case 2: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				start = count(0, start, measure);
+				GameBoard.checkGameOver();
+				start = count(2, start, measure);
+				if (GameBoard.getStatus() && GameBoard.hasMoved()) {
+					GameBoard.addRandomTile();
+					start = count(1, start, measure);
+					GameBoard.checkGameOver();
+					count(2, start, measure);
+				}
+			}
+		}
+	}
+
+	// adds the bytes allocated since start to an operation, and returns the new start
+	private long count(int op, long start, boolean measure)
+	{
+		if (!measure) {
+			return 0;
+		}
+		long now = mx.getCurrentThreadAllocatedBytes();
+		bytes[op] += now - start;
+		calls[op]++;
+		return now;
+	}
+
+	// xorshift, so choosing a move allocates nothing either
+	private int nextMove()
+	{
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed & 3;
+	}
+}
@@ -0,0 +1,315 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ * 
+ * Description: Test cases for the packed 4x4 board, its evaluation and the opening book
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class TestBitBoard
+{
+	@Test
+	public void testPackUnpack()
+	{
+		int[][] b = {{0,2,4,8},{16,32,64,128},{256,512,1024,2048},{4096,8192,16384,32768}};
+		long p = BitBoard.pack(b);
+
+		assertTrue(Arrays.deepEquals(b, BitBoard.unpack(p)));
+		// cell (1, 2) holds 64, which has exponent 6
+		assertTrue(BitBoard.get(p, 1, 2) == 6);
+		// row 0 holds exponents 0, 1, 2, 3 from column 0
+		assertTrue(BitBoard.row(p, 0) == 0x3210);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPackWrongSize()
+	{
+		BitBoard.pack(new int[5][4]);
+	}
+
+	@Test
+	public void testTranspose()
+	{
+		int[][] b = {{0,2,4,8},{16,32,64,128},{256,512,1024,2048},{4096,8192,16384,32768}};
+		int[][] t = new int[4][4];
+		for (int i=0; i<4; i++) {
+			for (int j=0; j<4; j++) {
+				t[j][i] = b[i][j];
+			}
+		}
+		assertTrue(BitBoard.transpose(BitBoard.pack(b)) == BitBoard.pack(t));
+	}
+
+	@Test
+	public void testCountEmpty()
+	{
+		int[][] b = {{0,2,4,4},{2,0,0,0},{0,2,4,0},{4,2,0,4}};
+		assertTrue(BitBoard.countEmpty(BitBoard.pack(b)) == 7);
+		assertTrue(BitBoard.countEmpty(0L) == 16);
+		assertTrue(BitBoard.maxExponent(BitBoard.pack(b)) == 2);
+	}
+
+	@Test
+	// The table lookup must agree with scoring each line of the array
+	public void testEvaluatorTable()
+	{
+		Random rand = new Random(1);
+		Evaluator ev = new Evaluator(1, 2, 3, 4, 5);
+		for (int k=0; k<1000; k++) {
+			int[][] b = new int[4][4];
+			for (int i=0; i<4; i++) {
+				for (int j=0; j<4; j++) {
+					b[i][j] = rand.nextBoolean() ? 0 : 1 << (1 + rand.nextInt(14));
+				}
+			}
+			assertTrue(ev.evaluate(BitBoard.pack(b)) == ev.evaluateLines(b));
+		}
+	}
+
+	@Test
+	// A board with its largest tiles in order along an edge scores higher
+	public void testEvaluatorPrefersOrder()
+	{
+		int[][] ordered = {{1024,256,64,16},{0,0,0,0},{0,0,0,0},{0,0,0,0}};
+		int[][] mixed = {{64,1024,16,256},{0,0,0,0},{0,0,0,0},{0,0,0,0}};
+		assertTrue(Evaluator.DEFAULT.evaluate(ordered) > Evaluator.DEFAULT.evaluate(mixed));
+	}
+
+	@Test
+	// The move tables must give the same board and score as GameBoard
+	public void testMoveMatchesGameBoard()
+	{
+		Random rand = new Random(2);
+		for (int k=0; k<500; k++) {
+			int[][] b = new int[4][4];
+			for (int i=0; i<4; i++) {
+				for (int j=0; j<4; j++) {
+					b[i][j] = rand.nextBoolean() ? 0 : 1 << (1 + rand.nextInt(3));
+				}
+			}
+			long p = BitBoard.pack(b);
+			for (int dir=0; dir<4; dir++) {
+				GameBoard.init(b);
+				switch (dir) {
+					case BitBoard.UP: GameBoard.shiftUp(); break;
+					case BitBoard.DOWN: GameBoard.shiftDown(); break;
+					case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				assertTrue(BitBoard.move(p, dir) == BitBoard.pack(GameBoard.getBoard()));
+				assertTrue(BitBoard.moveScore(p, dir) == GameBoard.getScore());
+			}
+		}
+		GameBoard.resetHighScore();
+	}
+
+	@Test
+	// All four successors at once match the moves made one at a time
+	public void testSuccessors()
+	{
+		Random rand = new Random(7);
+		long[] next = new long[4];
+		int[] scores = new int[4];
+		byte[][] cells = new byte[4][16];
+		long[] gains = new long[4];
+		byte[] shifted = new byte[16];
+		for (int t=0; t<200; t++) {
+			int[][] b = new int[4][4];
+			for (int i=0; i<4; i++) {
+				for (int j=0; j<4; j++) {
+					b[i][j] = rand.nextBoolean() ? 0 : 1 << (1 + rand.nextInt(3));
+				}
+			}
+			long p = BitBoard.pack(b);
+			int mask = BitBoard.successors(p, next, scores);
+			GameBoard.init(b);
+			int gameMask = GameBoard.successors(cells, gains);
+			for (int dir=0; dir<4; dir++) {
+				long moved = BitBoard.move(p, dir);
+				assertTrue(next[dir] == moved && scores[dir] == BitBoard.moveScore(p, dir));
+				assertTrue(((mask >> dir) & 1) == (moved != p ? 1 : 0));
+
+				GameBoard.init(b);
+				switch (dir) {
+					case BitBoard.UP: GameBoard.shiftUp(); break;
+					case BitBoard.DOWN: GameBoard.shiftDown(); break;
+					case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				GameBoard.copyExponents(shifted);
+				assertTrue(Arrays.equals(cells[dir], shifted) && gains[dir] == GameBoard.getScore());
+				assertTrue(((gameMask >> dir) & 1) == (GameBoard.hasMoved() ? 1 : 0));
+			}
+		}
+		GameBoard.resetHighScore();
+	}
+
+	@Test
+	public void testCanMove()
+	{
+		int[][] full = {{2,4,2,4},{4,2,4,2},{2,4,2,4},{4,2,4,2}};
+		assertFalse(BitBoard.canMove(BitBoard.pack(full)));
+		full[0][1] = 2;
+		assertTrue(BitBoard.canMove(BitBoard.pack(full)));
+	}
+
+	@Test
+	// The search must pick the only move that merges the two 1024s
+	public void testExpectimax()
+	{
+		int[][] b = {{1024,2,4,8},{1024,16,32,64},{2,4,8,16},{4,8,16,32}};
+		long p = BitBoard.pack(b);
+		int dir = new Expectimax(Evaluator.DEFAULT).bestMove(p, 2);
+		assertTrue(dir == BitBoard.UP || dir == BitBoard.DOWN);
+	}
+
+	@Test
+	// With no time at all, the search still returns the move found at depth 1
+	public void testExpectimaxNoBudget()
+	{
+		Expectimax search = new Expectimax(Evaluator.DEFAULT);
+		int[][] b = {{1024,1024,2,4},{8,16,32,64},{2,4,8,16},{0,8,16,32}};
+		long p = BitBoard.pack(b);
+		int dir = search.bestMove(p, 6, 0);
+		assertTrue(dir == BitBoard.LEFT || dir == BitBoard.RIGHT);
+		assertTrue(dir == search.bestMove(p, 1));
+
+		int[][] stuck = {{2,4,2,4},{4,2,4,2},{2,4,2,4},{4,2,4,2}};
+		assertTrue(search.bestMove(BitBoard.pack(stuck), 6, 0) == -1);
+	}
+
+	@Test
+	public void testMirrorFlip()
+	{
+		int[][] b = {{0,2,4,8},{16,32,64,128},{256,512,1024,2048},{4096,8192,16384,32768}};
+		long p = BitBoard.pack(b);
+		int[][] m = BitBoard.unpack(BitBoard.mirror(p));
+		int[][] f = BitBoard.unpack(BitBoard.flip(p));
+		for (int i=0; i<4; i++) {
+			for (int j=0; j<4; j++) {
+				assertTrue(m[i][j] == b[i][3-j]);
+				assertTrue(f[i][j] == b[3-i][j]);
+			}
+		}
+	}
+
+	@Test
+	public void testSymmetricMoves()
+	{
+		Random rand = new Random(6);
+		for (int k=0; k<200; k++) {
+			long p = 0;
+			for (int c=0; c<16; c++) {
+				p |= (long) rand.nextInt(4) << (4*c);
+			}
+			for (int sym=0; sym<8; sym++) {
+				long t = OpeningBook.transform(p, sym);
+				for (int dir=0; dir<4; dir++) {
+					long moved = OpeningBook.transform(BitBoard.move(p, dir), sym);
+					assertTrue(moved == BitBoard.move(t, OpeningBook.toCanonical(dir, sym)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOpeningBook() throws Exception
+	{
+		Path file = Files.createTempFile("book", ".bin");
+		OpeningBook.build(file, 2, 1, 0, Rules.STANDARD, 1);
+		OpeningBook book = OpeningBook.open(file);
+
+		// every start is in the book, under any of its symmetries
+		long start = 1L | 2L << 24;
+		int dir = book.lookup(start);
+		assertTrue(dir >= 0);
+		assertTrue(BitBoard.move(start, dir) != start);
+		for (int sym=0; sym<8; sym++) {
+			long t = OpeningBook.transform(start, sym);
+			assertTrue(book.lookup(t) == OpeningBook.toCanonical(dir, sym));
+		}
+		// boards from later in a game are not
+		assertTrue(book.lookup(0x123456789AL) == -1);
+		book.close();
+		Files.delete(file);
+	}
+
+	@Test
+	// A book whose size does not match its header is refused when opened, not in the middle of a game
+	public void testOpeningBookDamaged() throws Exception
+	{
+		Path file = Files.createTempFile("book", ".bin");
+		try {
+			OpeningBook.build(file, 1, 1, 0, Rules.STANDARD, 1);
+			byte[] good = Files.readAllBytes(file);
+			int count = ByteBuffer.wrap(good).order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+			byte[] negative = good.clone();
+			ByteBuffer.wrap(negative).order(ByteOrder.LITTLE_ENDIAN).putInt(4, -1);
+			byte[] more = good.clone();
+			ByteBuffer.wrap(more).order(ByteOrder.LITTLE_ENDIAN).putInt(4, count + 1);
+			byte[][] damaged = {Arrays.copyOf(good, good.length - 1), Arrays.copyOf(good, good.length + 9), negative, more};
+			for (byte[] bytes : damaged) {
+				Files.write(file, bytes);
+				try {
+					OpeningBook.open(file).close();
+					fail("A damaged book was opened");
+				}
+				catch (IllegalArgumentException e) {
+					// expected
+				}
+			}
+
+			// a book policy keeps its file open until it is closed
+			Files.write(file, good);
+			String name = "book:" + file + ":1";
+			try (Policy.Factory f = Policy.byName(name, Rules.STANDARD, ForkJoinPool.commonPool())) {
+				long start = 1L | 2L << 24;
+				assertTrue(f.get().chooseMove(start) >= 0);
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	// The same seed gives the same tiles through BitBoard as through GameBoard
+	public void testSpawnMatchesGameBoard()
+	{
+		Random moves = new Random(8);
+		for (long seed=0; seed<20; seed++) {
+			GameBoard.setSeed(seed);
+			GameBoard.init(4, 4);
+			Random rand = new Random(seed);
+			long b = BitBoard.spawn(BitBoard.spawn(0, rand, 0.1), rand, 0.1);
+			assertTrue(Arrays.deepEquals(BitBoard.unpack(b), GameBoard.getBoard()));
+			while (GameBoard.getStatus()) {
+				int dir = moves.nextInt(4);
+				switch (dir) {
+					case BitBoard.UP: GameBoard.shiftUp(); break;
+					case BitBoard.DOWN: GameBoard.shiftDown(); break;
+					case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				GameBoard.checkGameOver();
+				long next = BitBoard.move(b, dir);
+				if (GameBoard.getStatus() && GameBoard.hasMoved()) {
+					GameBoard.addRandomTile();
+					GameBoard.checkGameOver();
+					next = BitBoard.spawn(next, rand, 0.1);
+				}
+				b = next;
+				assertTrue(Arrays.deepEquals(BitBoard.unpack(b), GameBoard.getBoard()));
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for resuming and merging the shards of a campaign
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class TestCampaign
+{
+	private static final String[] POLICIES = {"greedy", "random", "expectimax:1"};
+	private static final long SEEDS = 12;
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("campaign");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+		GameBoard.init(4, 4);
+		GameBoard.resetHighScore();
+	}
+
+	@Test
+	// A shard that fails after a checkpoint and is run again gives the same totals as one process
+	public void testResume() throws IOException
+	{
+		Campaign sharded = new Campaign(dir.resolve("sharded"), 100, SEEDS, POLICIES);
+		sharded.checkpointNanos = 0;
+		sharded.failAfter = 5;
+		try {
+			sharded.runShard(0, 2);
+			fail("The shard did not fail");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		// the game being played when it failed was never saved
+		assertTrue(sharded.gamesDone(2) == 4);
+		try {
+			sharded.merge(2);
+			fail("Unfinished shards were merged");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+
+		sharded.failAfter = Long.MAX_VALUE;
+		sharded.runShard(0, 2);
+		sharded.runShard(1, 2);
+		assertTrue(sharded.gamesDone(2) == sharded.games());
+		GameStats[] merged = sharded.merge(2);
+
+		Campaign single = new Campaign(dir.resolve("single"), 100, SEEDS, POLICIES);
+		GameStats[] whole = single.runShard(0, 1);
+		for (int p=0; p<POLICIES.length; p++) {
+			assertStatsEqual(merged[p], whole[p]);
+		}
+	}
+
+	@Test
+	// A finished shard is not played again
+	public void testFinishedShard() throws IOException
+	{
+		Campaign c = new Campaign(dir, 0, 3, "greedy");
+		GameStats first = c.runShard(0, 1)[0];
+		c.failAfter = 1;
+		GameStats again = c.runShard(0, 1)[0];
+		assertStatsEqual(first, again);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPolicy()
+	{
+		new Campaign(dir, 0, 1, "nosuchpolicy");
+	}
+
+	@Test
+	// Names are checked when the campaign is made, without loading networks or books
+	public void testPolicyNames() throws IOException
+	{
+		String[] bad = {"ntuple", "book", "expectimax:x", "expectimax:0",
+				"book:" + dir.resolve("missing"), "ntuple:" + dir.resolve("missing")};
+		for (String name : bad) {
+			try {
+				new Campaign(dir, 0, 1, name);
+				fail("The policy name " + name + " was accepted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		// a file that is not a network is only read when a shard runs
+		Path weights = Files.write(dir.resolve("weights.bin"), new byte[] {1, 2, 3});
+		Campaign c = new Campaign(dir.resolve("run"), 0, 1, "ntuple:" + weights + ":small");
+		try {
+			c.runShard(0, 1);
+			fail("A network of the wrong size was loaded");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	// the statistics are built from counts and sums of whole numbers, so they match exactly
+	private static void assertStatsEqual(GameStats a, GameStats b)
+	{
+		assertTrue(a.games() == b.games());
+		assertTrue(a.moves() == b.moves());
+		assertTrue(a.scores().mean() == b.scores().mean());
+		assertTrue(a.scores().max() == b.scores().max());
+		assertTrue(a.lengths().mean() == b.lengths().mean());
+		for (double q : new double[] {0.1, 0.5, 0.9}) {
+			assertTrue(a.scores().quantile(q) == b.scores().quantile(q));
+			assertTrue(a.lengths().quantile(q) == b.lengths().quantile(q));
+		}
+		for (int tile=2; tile<=8192; tile*=2) {
+			assertTrue(a.maxTileShare(tile) == b.maxTileShare(tile));
+		}
+		for (int move=1; move<=2000; move+=50) {
+			assertTrue(a.meanEmpty(move) == b.meanEmpty(move));
+		}
+	}
+}
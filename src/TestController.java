@@ -0,0 +1,96 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for playing scripted move files through the controller
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TestController
+{
+	// moves played by script() with seed 42, and the score of its last game
+	private static final long MOVES = 622;
+	private static final long LAST_SCORE = 1428;
+
+	private Path file;
+	private PrintStream out;
+	private ByteArrayOutputStream printed;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = Files.createTempFile("moves", ".txt");
+		out = System.out;
+		printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed, true, "UTF-8"));
+		Controller.setRules(Rules.STANDARD);
+		Controller.stats = null;
+		Controller.setLeaderboard(null);
+		Controller.setRecording(null);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		System.setOut(out);
+		Files.delete(file);
+		GameBoard.init(4, 4);
+		GameBoard.resetHighScore();
+	}
+
+	// three games of a fixed cycle of moves, each followed by y, then n
+	private static String script()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int g=0; g<3; g++) {
+			for (int i=0; i<500; i++) {
+				sb.append("ldru".charAt(i % 4)).append(' ');
+			}
+			sb.append(g < 2 ? "\ny\n" : "\nn\n");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	// The same file and seed always play the same games
+	public void testBatch() throws Exception
+	{
+		Files.write(file, script().getBytes(StandardCharsets.US_ASCII));
+		Controller.runBatch(file.toString(), 4, 4, 42);
+		String text = new String(printed.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(text, Controller.gamesPlayed == 3);
+		assertTrue(text, Controller.movesPlayed == MOVES);
+		assertTrue(text, GameBoard.getScore() == LAST_SCORE);
+		assertTrue(text, text.contains("Game 3: score " + LAST_SCORE));
+		assertTrue(text, text.contains("3 games, " + MOVES + " moves"));
+
+		// a second run from the same seed plays the same games again
+		printed.reset();
+		Controller.runBatch(file.toString(), 4, 4, 42);
+		assertTrue(Controller.movesPlayed == MOVES);
+		assertTrue(GameBoard.getScore() == LAST_SCORE);
+	}
+
+	@Test
+	// Input that ends in the middle of a game still counts that game
+	public void testBatchEndsMidGame() throws Exception
+	{
+		Files.write(file, "l d r u l d".getBytes(StandardCharsets.US_ASCII));
+		Controller.runBatch(file.toString(), 5, 4, 7);
+		assertTrue(Controller.gamesPlayed == 1);
+		assertTrue(Controller.movesPlayed == 6);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchTooSmall() throws Exception
+	{
+		Controller.runBatch(file.toString(), 3, 3, 1);
+	}
+}
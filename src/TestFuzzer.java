@@ -0,0 +1,99 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for the fuzzer that checks the board engines against GameBoard
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestFuzzer
+{
+	// the tiled engine, except that it throws once the given number of moves have been made
+	// or when moving left with a tile of at least the given value on the board
+	private static Fuzzer.Engine throwing(long moves, int tile)
+	{
+		return new Fuzzer.Engine() {
+			private long made;
+
+			public String name()
+			{
+				return "throwing";
+			}
+
+			public boolean supports(int rows, int cols)
+			{
+				return Fuzzer.TILED.supports(rows, cols);
+			}
+
+			public int maxExponent()
+			{
+				return Fuzzer.TILED.maxExponent();
+			}
+
+			public long move(int[][] b, int dir)
+			{
+				if (++made > moves) {
+					throw new IllegalStateException("out of moves");
+				}
+				for (int[] row : b) {
+					for (int v : row) {
+						if (dir == BitBoard.LEFT && v >= tile) {
+							throw new ArrayIndexOutOfBoundsException(v);
+						}
+					}
+				}
+				return Fuzzer.TILED.move(b, dir);
+			}
+
+			public boolean canMove(int[][] b)
+			{
+				return Fuzzer.TILED.canMove(b);
+			}
+		};
+	}
+
+	@Test
+	// A correct engine passes, and every board checked is counted
+	public void testNoMismatch()
+	{
+		AtomicLong checked = new AtomicLong();
+		Fuzzer.Failure f = new Fuzzer(Fuzzer.TILED, 4, 4).run(2, 200_000_000L, 1, checked);
+		assertTrue(String.valueOf(f), f == null);
+		assertTrue(checked.get() > 0);
+	}
+
+	@Test(timeout = 10000)
+	// An exception is a failure, and the boards checked before it are all counted
+	public void testEngineThrows()
+	{
+		AtomicLong checked = new AtomicLong();
+		// four moves per board, so the first move of board 1501 throws
+		Fuzzer.Failure f = new Fuzzer(throwing(4 * 1500, Integer.MAX_VALUE), 4, 4).run(1, 60_000_000_000L, 1, checked);
+		assertTrue(f != null);
+		assertTrue(f.reason, f.reason.contains("throwing threw java.lang.IllegalStateException"));
+		assertTrue(checked.get() + " boards", checked.get() == 1501);
+	}
+
+	@Test(timeout = 10000)
+	// An exception is shrunk like a mismatch, down to the one tile that causes it
+	public void testShrinkException()
+	{
+		Fuzzer.Failure f = new Fuzzer(throwing(Long.MAX_VALUE, 64), 4, 4).run(2, 60_000_000_000L, 3, new AtomicLong());
+		assertTrue(f != null);
+		assertTrue(f.reason, f.reason.contains("ArrayIndexOutOfBoundsException"));
+		assertTrue(f.dir == BitBoard.LEFT);
+		int tiles = 0;
+		for (int[] row : f.board) {
+			for (int v : row) {
+				if (v != 0) {
+					tiles++;
+					assertTrue(f.toString(), v == 64);
+				}
+			}
+		}
+		assertTrue(f.toString(), tiles == 1);
+	}
+}
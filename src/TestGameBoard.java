@@ -456,5 +456,103 @@ public class TestGameBoard
 		assertTrue(c == 1);
 	}
 
+	@Test
+	// A variant with a higher winning tile does not end at 2048
+	public void testWinTileVariant()
+	{
+		int[][] b = {{1024,0,0,0},{1024,0,0,0},{0,0,0,0},{0,0,0,0}};
+		GameBoard.init(b, new Rules(4096, false, 0.1));
+
+		GameBoard.shiftUp();
+		GameBoard.checkGameOver();
+
+		// 2048 is not the winning tile in this variant
+		assertTrue(!GameBoard.has2048() && GameBoard.getStatus());
+		assertTrue(GameBoard.getWinTile() == 4096);
+	}
 
+	@Test
+	// Reaching the winning tile does not end the game when playing on
+	public void testKeepPlaying()
+	{
+		int[][] b = {{1024,0,0,0},{1024,0,0,0},{0,0,0,0},{0,0,0,0}};
+		GameBoard.init(b, new Rules(2048, true, 0.1));
+
+		GameBoard.shiftUp();
+		GameBoard.checkGameOver();
+
+		// the win is recorded but the game goes on
+		assertTrue(GameBoard.has2048() && GameBoard.getStatus());
+	}
+
+	@Test
+	// The chance of a 4 comes from the rules
+	public void testFourChance()
+	{
+		GameBoard.init(e, new Rules(2048, false, 1));
+		GameBoard.addRandomTile();
+		GameBoard.addRandomTile();
+
+		int numFours = 0;
+		for (int[] row : GameBoard.getBoard()) {
+			for (int cell : row) {
+				if (cell == 4) {
+					numFours++;
+				}
+			}
+		}
+		assertTrue(numFours == 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRules()
+	{
+		new Rules(3000, false, 0.1);
+	}
+
+	@Test
+	// Sliding a single line follows the same rules as the shifts
+	public void testSlideLine()
+	{
+		// 2-2-4-4  ->  4-8-0-0
+		int[] line = {2,2,4,4};
+		int gained = GameBoard.slideLine(line, 4);
+		assertTrue(Arrays.equals(line, new int[]{4,8,0,0}) && gained == 12);
+
+		// 4-0-4-4-8  ->  8-4-8-0-0, only the first pair merges
+		int[] line2 = {4,0,4,4,8};
+		gained = GameBoard.slideLine(line2, 5);
+		assertTrue(Arrays.equals(line2, new int[]{8,4,8,0,0}) && gained == 8);
+	}
+
+	@Test
+	// Only a shift that changes the board counts as a move
+	public void testHasMoved()
+	{
+		int[][] b = {{2,4,0,0},{0,0,0,0},{0,0,0,0},{0,0,0,0}};
+		GameBoard.init(b);
+		GameBoard.shiftLeft();
+		assertFalse(GameBoard.hasMoved());
+		GameBoard.shiftRight();
+		assertTrue(GameBoard.hasMoved());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTile()
+	{
+		int[][] b = {{2,6,0,0},{0,0,0,0},{0,0,0,0},{0,0,0,0}};
+		GameBoard.init(b);
+	}
+
+	@Test
+	// addRandomTile reports the cell it filled
+	public void testAddRandomTileCell()
+	{
+		GameBoard.init(new int[5][7]);
+		int cell = GameBoard.addRandomTile();
+		int[][] b = GameBoard.getBoard();
+		assertTrue(b[cell / 7][cell % 7] != 0);
+		assertTrue(GameBoard.getTile(cell / 7, cell % 7) == b[cell / 7][cell % 7]);
+		assertTrue(GameBoard.getEmptyCount() == 34);
+	}
 }
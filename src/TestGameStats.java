@@ -0,0 +1,98 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for the quantile sketches and game statistics
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+public class TestGameStats
+{
+	@Test
+	public void testQuantiles()
+	{
+		QuantileSketch s = new QuantileSketch();
+		for (long v=1; v<=100000; v++) {
+			s.add(v);
+		}
+		assertTrue(s.count() == 100000);
+		assertTrue(s.quantile(0) == 1);
+		assertTrue(s.quantile(1) == 100000);
+		// estimates are within about 3% of the true quantile
+		assertTrue(Math.abs(s.quantile(0.5) - 50000) <= 1600);
+		assertTrue(Math.abs(s.quantile(0.99) - 99000) <= 3100);
+		assertTrue(Math.abs(s.mean() - 50000.5) < 1e-6);
+	}
+
+	@Test
+	public void testQuantileMerge()
+	{
+		QuantileSketch a = new QuantileSketch();
+		QuantileSketch b = new QuantileSketch();
+		QuantileSketch all = new QuantileSketch();
+		for (long v=0; v<1000; v++) {
+			(v % 3 == 0 ? a : b).add(v * v);
+			all.add(v * v);
+		}
+		a.merge(b);
+		for (double q : new double[]{0.1, 0.5, 0.9}) {
+			assertTrue(a.quantile(q) == all.quantile(q));
+		}
+		assertTrue(a.max() == 999 * 999);
+	}
+
+	@Test
+	public void testGameStats()
+	{
+		GameStats a = new GameStats();
+		GameStats b = new GameStats();
+		a.recordMove(1, 3);
+		a.recordMove(2, 2);
+		a.recordMove(3, 4);
+		a.recordGame(100, 3, 64);
+		b.recordMove(1, 1);
+		b.recordGame(300, 1, 128);
+		a.merge(b);
+
+		assertTrue(a.games() == 2);
+		assertTrue(a.moves() == 4);
+		assertTrue(a.maxTileShare(64) == 0.5);
+		assertTrue(a.maxTileShare(2048) == 0);
+		// move 1 had 3 and 1 empty cells, moves 2 and 3 had 2 and 4
+		assertTrue(a.meanEmpty(1) == 2);
+		assertTrue(a.meanEmpty(3) == 3);
+		assertTrue(a.scores().max() == 300);
+	}
+
+	@Test
+	// Statistics read back from a checkpoint match the ones written
+	public void testGameStatsWriteRead() throws Exception
+	{
+		GameStats a = new GameStats();
+		for (int g=1; g<=50; g++) {
+			for (int m=1; m<=g; m++) {
+				a.recordMove(m, 16 - m % 16);
+			}
+			a.recordGame(g * 37, g, 1 << (g % 12));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		a.write(new DataOutputStream(bytes));
+		GameStats b = GameStats.read(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertTrue(b.games() == a.games() && b.moves() == a.moves());
+		for (double q=0; q<=1; q+=0.05) {
+			assertTrue(b.scores().quantile(q) == a.scores().quantile(q));
+			assertTrue(b.lengths().quantile(q) == a.lengths().quantile(q));
+		}
+		assertTrue(b.scores().mean() == a.scores().mean());
+		assertTrue(b.maxTileShare(64) == a.maxTileShare(64));
+		assertTrue(b.meanEmpty(20) == a.meanEmpty(20));
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for reading commands from a channel
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TestInputReader
+{
+	private static InputReader reader(byte[] input)
+	{
+		return new InputReader(Channels.newChannel(new ByteArrayInputStream(input)));
+	}
+
+	private static InputReader reader(String input)
+	{
+		return reader(input.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	// Input longer than the 64K buffer, with tokens that cross a refill
+	public void testLongInput()
+	{
+		StringBuilder sb = new StringBuilder();
+		String moves = "udlr";
+		int count = 100_000;
+		for (int i=0; i<count; i++) {
+			sb.append(moves.charAt(i % 4));
+			// a long token every so often moves the token boundaries around
+			sb.append(i % 1000 == 0 ? " xyz\n" : " ");
+		}
+		InputReader in = reader(sb.toString());
+		for (int i=0; i<count; i++) {
+			assertTrue(in.nextCommand() == moves.charAt(i % 4));
+			if (i % 1000 == 0) {
+				assertTrue(in.nextCommand() == InputReader.INVALID);
+			}
+		}
+		assertTrue(in.nextCommand() == InputReader.EOF);
+		assertTrue(in.isEOF());
+	}
+
+	@Test
+	// A token exactly at the end of the 64K buffer is read whole
+	public void testTokenAcrossBoundary()
+	{
+		byte[] input = new byte[(1 << 16) + 2];
+		Arrays.fill(input, (byte) ' ');
+		input[(1 << 16) - 1] = 'a';
+		input[1 << 16] = 'b';
+		InputReader in = reader(input);
+		assertTrue(in.next().equals("ab"));
+		assertTrue(in.nextCommand() == InputReader.EOF);
+	}
+
+	@Test
+	// Input that ends in the middle of a line, without a newline
+	public void testEndOfInput()
+	{
+		InputReader in = reader("4 4\nu d\n  l");
+		assertTrue(in.nextInt() == 4);
+		assertTrue(in.next().equals("4"));
+		assertTrue(in.nextCommand() == 'u');
+		assertTrue(in.nextCommand() == 'd');
+		assertFalse(in.isEOF());
+		assertTrue(in.nextCommand() == 'l');
+		assertTrue(in.isEOF());
+		assertTrue(in.nextCommand() == InputReader.EOF);
+		assertTrue(in.next() == null);
+		// reading past the end keeps returning EOF
+		assertTrue(in.nextCommand() == InputReader.EOF);
+	}
+
+	@Test
+	// Empty input and input of only whitespace
+	public void testNoTokens()
+	{
+		assertTrue(reader("").nextCommand() == InputReader.EOF);
+		assertTrue(reader(" \t\r\n\f ").nextCommand() == InputReader.EOF);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testNextIntAtEnd()
+	{
+		reader("  ").nextInt();
+	}
+
+	@Test
+	// Tokens of several bytes, and bytes outside ASCII
+	public void testInvalidBytes()
+	{
+		byte[] input = {'u', 'p', ' ', (byte) 0xff, ' ', (byte) 0xc3, (byte) 0xa9, '\n', 0, ' ', 'r'};
+		InputReader in = reader(input);
+		assertTrue(in.nextCommand() == InputReader.INVALID);
+		// a single byte comes back as itself, which the controller treats as an unknown command
+		assertTrue(in.nextCommand() == 0xff);
+		assertTrue(in.nextCommand() == InputReader.INVALID);
+		assertTrue(in.nextCommand() == 0);
+		assertTrue(in.nextCommand() == 'r');
+		assertTrue(in.nextCommand() == InputReader.EOF);
+	}
+
+	@Test(timeout = 5000)
+	// A channel that has no input ready returns 0 bytes several times before each byte
+	public void testEmptyReads()
+	{
+		byte[] data = "u d\nl".getBytes(StandardCharsets.US_ASCII);
+		ReadableByteChannel ch = new ReadableByteChannel() {
+			private int pos, idle;
+
+			public int read(ByteBuffer dst)
+			{
+				if (pos == data.length) {
+					return -1;
+				}
+				if (idle++ % 4 != 3) {
+					return 0;
+				}
+				dst.put(data[pos++]);
+				return 1;
+			}
+
+			public boolean isOpen()
+			{
+				return true;
+			}
+
+			public void close()
+			{
+			}
+		};
+		InputReader in = new InputReader(ch);
+		assertTrue(in.nextCommand() == 'u');
+		assertTrue(in.nextCommand() == 'd');
+		assertTrue(in.nextCommand() == 'l');
+		assertTrue(in.nextCommand() == InputReader.EOF);
+	}
+}
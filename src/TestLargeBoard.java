@@ -0,0 +1,170 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ * 
+ * Description: Test cases for the storage layouts of large boards
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestLargeBoard
+{
+	@Test
+	public void testTiledGetSet()
+	{
+		// 70 rows and 130 columns span several 64x64 blocks, with partial ones at the edges
+		TiledBoard t = new TiledBoard(70, 130);
+		t.set(0, 0, 2);
+		t.set(69, 129, 4);
+		t.set(64, 63, 8);
+		assertTrue(t.get(0, 0) == 2);
+		assertTrue(t.get(69, 129) == 4);
+		assertTrue(t.get(64, 63) == 8);
+		assertTrue(t.get(63, 64) == 0);
+		assertTrue(t.toArray()[69][129] == 4);
+	}
+
+	@Test
+	public void testTiledMatchesGameBoard()
+	{
+		Random rand = new Random(3);
+		int[][] sizes = {{4,4},{3,9},{70,130},{129,65}};
+		for (int[] size : sizes) {
+			int[][] b = new int[size[0]][size[1]];
+			for (int[] row : b) {
+				for (int j=0; j<row.length; j++) {
+					row[j] = rand.nextBoolean() ? 0 : 1 << (1 + rand.nextInt(3));
+				}
+			}
+			TiledBoard t = new TiledBoard(b);
+			// a sequence of moves, so the board is left transposed between some of them
+			int[] dirs = {BitBoard.UP, BitBoard.DOWN, BitBoard.LEFT, BitBoard.UP, BitBoard.RIGHT};
+			for (int dir : dirs) {
+				int gained;
+				switch (dir) {
+					case BitBoard.UP: gained = GameBoard.shiftUp(b); break;
+					case BitBoard.DOWN: gained = GameBoard.shiftDown(b); break;
+					case BitBoard.LEFT: gained = GameBoard.shiftLeft(b); break;
+					default: gained = GameBoard.shiftRight(b); break;
+				}
+				assertTrue(t.move(dir) == gained);
+				assertTrue(t.canMove() == GameBoard.canMove(b));
+			}
+			assertTrue(Arrays.deepEquals(b, t.toArray()));
+		}
+	}
+
+	@Test
+	// All four successors of boards that are not square, into buffers left over from other boards
+	public void testSuccessorsMatchMove()
+	{
+		Random rand = new Random(9);
+		int[][] sizes = {{4,4},{5,7},{9,4},{70,130},{129,65}};
+		for (int[] size : sizes) {
+			int rows = size[0], cols = size[1];
+			byte[][] next = new byte[4][rows * cols];
+			long[] gains = new long[4];
+			for (int t=0; t<20; t++) {
+				int density = rand.nextInt(101);
+				int[][] b = new int[rows][cols];
+				for (int[] row : b) {
+					for (int j=0; j<cols; j++) {
+						row[j] = rand.nextInt(100) < density ? 1 << (1 + rand.nextInt(1 + t % 4)) : 0;
+					}
+				}
+				for (byte[] n : next) {
+					rand.nextBytes(n);
+				}
+				GameBoard.init(b);
+				byte[] cells = new byte[rows * cols];
+				GameBoard.copyExponents(cells);
+				int mask = GameBoard.successors(next, gains);
+				for (int dir=0; dir<4; dir++) {
+					byte[] moved = cells.clone();
+					long gained = GameBoard.move(moved, rows, cols, dir);
+					assertTrue(Arrays.equals(next[dir], moved));
+					assertTrue(gains[dir] == Math.max(gained, 0));
+					assertTrue(((mask >> dir) & 1) == (gained >= 0 ? 1 : 0));
+				}
+			}
+		}
+		GameBoard.init(4, 4);
+	}
+
+	@Test
+	public void testTiledCanMove()
+	{
+		int[][] full = {{2,4,2},{4,2,4}};
+		assertFalse(new TiledBoard(full).canMove());
+		full[1][2] = 2;
+		// the 2 in the corner now sits below another 2
+		assertTrue(new TiledBoard(full).canMove());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTiledWrongSize()
+	{
+		new TiledBoard(4, 4).load(new int[5][4]);
+	}
+
+	@Test
+	public void testSparseMatchesGameBoard()
+	{
+		Random rand = new Random(4);
+		int[][] sizes = {{4,4},{3,9},{40,70}};
+		for (int[] size : sizes) {
+			int[][] b = new int[size[0]][size[1]];
+			for (int[] row : b) {
+				for (int j=0; j<row.length; j++) {
+					row[j] = rand.nextInt(4) != 0 ? 0 : 1 << (1 + rand.nextInt(2));
+				}
+			}
+			// a threshold of 1 keeps the board sparse
+			SparseBoard s = new SparseBoard(b, 1);
+			int[] dirs = {BitBoard.RIGHT, BitBoard.UP, BitBoard.DOWN, BitBoard.LEFT, BitBoard.DOWN};
+			for (int dir : dirs) {
+				int gained;
+				switch (dir) {
+					case BitBoard.UP: gained = GameBoard.shiftUp(b); break;
+					case BitBoard.DOWN: gained = GameBoard.shiftDown(b); break;
+					case BitBoard.LEFT: gained = GameBoard.shiftLeft(b); break;
+					default: gained = GameBoard.shiftRight(b); break;
+				}
+				assertTrue(s.move(dir) == gained);
+				assertTrue(s.get(size[0]-1, 0) == b[size[0]-1][0]);
+			}
+			assertFalse(s.isDense());
+			assertTrue(Arrays.deepEquals(b, s.toArray()));
+		}
+	}
+
+	@Test
+	public void testSparseSpawn()
+	{
+		SparseBoard s = new SparseBoard(3, 3, 0.5);
+		Random rand = new Random(5);
+		s.set(1, 1, 8);
+		for (int k=0; k<4; k++) {
+			int cell = s.spawn(rand, 0.1);
+			int v = s.get(cell / 3, cell % 3);
+			assertTrue(v == 2 || v == 4);
+		}
+		// 5 of 9 cells are now occupied, which is more than half
+		assertTrue(s.isDense());
+		assertTrue(s.getTileCount() == 5);
+		assertTrue(s.get(1, 1) == 8);
+		for (int k=0; k<4; k++) {
+			s.spawn(rand, 0.1);
+		}
+		assertTrue(s.spawn(rand, 0.1) == -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSparseThreshold()
+	{
+		new SparseBoard(4, 4, 0);
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ * 
+ * Description: Test cases for the concurrent leaderboard
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class TestLeaderboard
+{
+	@Test
+	public void testTop()
+	{
+		Leaderboard lb = new Leaderboard(3);
+		long[] scores = {500, 20, 9000, 500, 64, 12000, 0};
+		for (long s : scores) {
+			lb.submit(s);
+		}
+		assertTrue(Arrays.equals(lb.top(), new long[]{12000, 9000, 500}));
+		assertTrue(lb.count() == scores.length);
+	}
+
+	@Test
+	public void testRank()
+	{
+		Leaderboard lb = new Leaderboard(10);
+		for (long s=1; s<=10000; s++) {
+			lb.submit(s);
+		}
+		// small scores have exact buckets
+		assertTrue(lb.rank(10000) == 1);
+		assertTrue(lb.rank(0) == 10001);
+		// 5000 scores are above 5000, to within one bucket of 128 scores
+		assertTrue(Math.abs(lb.rank(5000) - 5001) <= 128);
+		assertTrue(Math.abs(lb.rank(20000) - 1) <= 1);
+	}
+
+	@Test
+	public void testBuckets()
+	{
+		for (long s : new long[]{0, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE}) {
+			int b = QuantileSketch.bucket(s);
+			assertTrue(QuantileSketch.lowerBound(b) <= s);
+			assertTrue(b == QuantileSketch.bucket(QuantileSketch.lowerBound(b)));
+		}
+	}
+
+	@Test
+	public void testConcurrentSubmits() throws InterruptedException
+	{
+		Leaderboard lb = new Leaderboard(5);
+		Thread[] workers = new Thread[4];
+		for (int t=0; t<workers.length; t++) {
+			int id = t;
+			workers[t] = new Thread(() -> {
+				for (int i=0; i<10000; i++) {
+					lb.submit(id * 10000 + i);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread w : workers) {
+			w.join();
+		}
+		assertTrue(lb.count() == 40000);
+		assertTrue(Arrays.equals(lb.top(), new long[]{39999, 39998, 39997, 39996, 39995}));
+	}
+
+	@Test
+	public void testSaveLoad() throws Exception
+	{
+		Leaderboard lb = new Leaderboard(2);
+		lb.submit(100);
+		lb.submit(300);
+		lb.submit(200);
+		Path file = Files.createTempFile("leaderboard", ".dat");
+		lb.save(file);
+		Leaderboard copy = Leaderboard.load(file);
+		Files.delete(file);
+
+		assertTrue(Arrays.equals(copy.top(), new long[]{300, 200}));
+		assertTrue(copy.count() == 3);
+		assertTrue(copy.rank(150) == lb.rank(150));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeScore()
+	{
+		new Leaderboard(1).submit(-1);
+	}
+}
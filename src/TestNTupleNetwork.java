@@ -0,0 +1,151 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for the n-tuple network player
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestNTupleNetwork
+{
+	private NTupleNetwork net;
+	private Random rand;
+
+	@Before
+	public void setUp()
+	{
+		// a few games of training give the weights values to compare
+		net = NTupleNetwork.small();
+		SplittableRandom tiles = new SplittableRandom(1);
+		for (int g=0; g<20; g++) {
+			net.train(tiles, 0.1f);
+		}
+		rand = new Random(2);
+	}
+
+	private long randomBoard()
+	{
+		long b = 0;
+		for (int i=0; i<16; i++) {
+			if (rand.nextBoolean()) {
+				b |= (long) (1 + rand.nextInt(11)) << (4*i);
+			}
+		}
+		return b;
+	}
+
+	@Test
+	public void testTrainingLearns()
+	{
+		boolean nonZero = false;
+		for (int k=0; k<100; k++) {
+			nonZero |= net.value(randomBoard()) != 0;
+		}
+		assertTrue(nonZero);
+	}
+
+	@Test
+	// Training on several threads gives each thread's average score
+	public void testTrainParallel()
+	{
+		double[] averages = net.trainParallel(3, 5, 0.1f, 4);
+		assertTrue(averages.length == 3);
+		for (double a : averages) {
+			assertTrue(a > 0);
+		}
+	}
+
+	@Test
+	// A thread that fails makes the whole run fail, rather than leaving its average at 0
+	public void testTrainParallelFails()
+	{
+		IllegalStateException broken = new IllegalStateException("broken");
+		NTupleNetwork failing = new NTupleNetwork(new int[][] {{0, 1, 2, 3}}, Rules.STANDARD) {
+			private final AtomicInteger games = new AtomicInteger();
+
+			@Override
+			public long train(SplittableRandom tiles, float alpha)
+			{
+				if (games.incrementAndGet() == 7) {
+					throw broken;
+				}
+				return super.train(tiles, alpha);
+			}
+		};
+		try {
+			failing.trainParallel(3, 5, 0.1f, 4);
+			fail("Training with a failed thread returned");
+		}
+		catch (IllegalStateException e) {
+			assertTrue(e.getCause() == broken);
+		}
+	}
+
+	@Test
+	// All 8 rotations and reflections of a board have the same value
+	public void testSymmetry()
+	{
+		for (int k=0; k<200; k++) {
+			long b = randomBoard();
+			float v = net.value(b);
+			for (int sym=1; sym<8; sym++) {
+				float w = net.value(OpeningBook.transform(b, sym));
+				// the same weights are added in a different order
+				assertTrue(v + " != " + w, Math.abs(v - w) <= 1e-4f * Math.max(1, Math.abs(v)));
+			}
+		}
+	}
+
+	@Test
+	// A learning step moves the value towards the target, by the learning rate
+	public void testLearnStep()
+	{
+		for (int k=0; k<50; k++) {
+			long b = randomBoard();
+			float before = net.value(b);
+			float target = before + (rand.nextBoolean() ? 100 : -100);
+			net.learn(b, target, 0.1f);
+			float after = net.value(b);
+			assertTrue(Math.abs(target - after) < Math.abs(target - before));
+			// a weight used twice by a board moves it further, but random boards stay short of the target
+			assertTrue(Math.abs(after - before) >= 10 - 1e-3);
+			assertTrue((target - after) * (target - before) > 0);
+		}
+	}
+
+	@Test
+	public void testSaveLoad() throws Exception
+	{
+		Path file = Files.createTempFile("ntuple", ".bin");
+		try {
+			net.save(file);
+			NTupleNetwork copy = NTupleNetwork.small();
+			copy.load(file);
+			for (int k=0; k<200; k++) {
+				long b = randomBoard();
+				assertTrue(copy.value(b) == net.value(b));
+				assertTrue(copy.bestMove(b) == net.bestMove(b));
+			}
+
+			// the file of a network with other tuples does not fit
+			NTupleNetwork other = new NTupleNetwork(new int[][] {{0, 1, 2}}, Rules.STANDARD);
+			try {
+				other.load(file);
+				fail("Weights of a different network were loaded");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for recording games and seeking in them
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TestReplay
+{
+	private static final Rules RULES = new Rules(2048, true, 0.1);
+	private static final int INTERVAL = 16;
+
+	private Path file;
+	private List<int[][]> boards;
+	private List<Long> scores;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = Files.createTempFile("replay", ".rp");
+		boards = new ArrayList<>();
+		scores = new ArrayList<>();
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		Files.delete(file);
+		GameBoard.init(4, 4);
+		GameBoard.resetHighScore();
+	}
+
+	// records up to the given number of random moves on a 6x5 board, keeping
+	// the board and score after each of them
+	private void record(int moves) throws IOException
+	{
+		GameBoard.setSeed(3);
+		GameBoard.init(6, 5, RULES);
+		boards.add(GameBoard.getBoard());
+		scores.add(GameBoard.getScore());
+		try (Replay.Recorder rec = new Replay.Recorder(file, 6, 5, INTERVAL, RULES)) {
+			Random rand = new Random(3);
+			while (GameBoard.getStatus() && boards.size() <= moves) {
+				int dir = rand.nextInt(4);
+				switch (dir) {
+					case BitBoard.UP: GameBoard.shiftUp(); break;
+					case BitBoard.DOWN: GameBoard.shiftDown(); break;
+					case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+					default: GameBoard.shiftRight(); break;
+				}
+				if (GameBoard.hasMoved()) {
+					rec.move(dir, GameBoard.addRandomTile());
+					GameBoard.checkGameOver();
+					boards.add(GameBoard.getBoard());
+					scores.add(GameBoard.getScore());
+				}
+			}
+		}
+	}
+
+	private void assertSeek(Replay r, int m) throws IOException
+	{
+		r.seek(m);
+		assertTrue("move " + m, Arrays.deepEquals(GameBoard.getBoard(), boards.get(m)));
+		assertTrue("move " + m, GameBoard.getScore() == scores.get(m));
+	}
+
+	@Test
+	// Seeking in a recorded game gives the board and score it had after each move
+	public void testSeek() throws IOException
+	{
+		record(299);
+		Replay r = Replay.open(file);
+		try {
+			assertTrue(r.moves() == boards.size() - 1);
+			assertTrue(r.keyframes() == 1 + (boards.size() - 1) / INTERVAL);
+			for (int m=boards.size()-1; m>=0; m-=7) {
+				assertSeek(r, m);
+			}
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	@Test
+	// Moves on and either side of the keyframes, in a game that ends on a keyframe
+	public void testKeyframeBoundaries() throws IOException
+	{
+		record(4 * INTERVAL);
+		Replay r = Replay.open(file);
+		try {
+			assertTrue(r.moves() == 4 * INTERVAL);
+			assertTrue(r.keyframes() == 5);
+			int[] moves = {0, 1, INTERVAL - 1, INTERVAL, INTERVAL + 1, 2 * INTERVAL,
+					4 * INTERVAL - 1, 4 * INTERVAL};
+			for (int m : moves) {
+				assertSeek(r, m);
+			}
+			// going back after the end of the game
+			assertSeek(r, 0);
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	@Test
+	// Moves before the start and after the end of the game are refused
+	public void testSeekOutside() throws IOException
+	{
+		record(20);
+		Replay r = Replay.open(file);
+		try {
+			for (long m : new long[] {-1, 21, Long.MAX_VALUE}) {
+				try {
+					r.seek(m);
+					fail("Seeked to move " + m);
+				}
+				catch (IllegalArgumentException e) {
+					// expected
+				}
+			}
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	@Test
+	// A file cut short, or with a damaged footer or index, is refused when opened
+	public void testDamagedFooter() throws IOException
+	{
+		record(40);
+		byte[] good = Files.readAllBytes(file);
+		int footer = good.length - 16;
+		int index = footer - 8 * 3;
+
+		// cut short anywhere in the footer, or with nothing after the header
+		assertRefused(Arrays.copyOf(good, good.length - 1));
+		assertRefused(Arrays.copyOf(good, footer));
+		assertRefused(Arrays.copyOf(good, 40));
+		// wrong magic at the end
+		assertRefused(withInt(good, footer + 12, 0));
+		// numbers of moves and keyframes that do not agree, or are out of range
+		assertRefused(withLong(good, footer, 41 + INTERVAL));
+		assertRefused(withLong(good, footer, -1));
+		assertRefused(withInt(good, footer + 8, 4));
+		assertRefused(withInt(good, footer + 8, -1));
+		assertRefused(withInt(good, footer + 8, Integer.MAX_VALUE));
+		// keyframe offsets outside the file, or out of order
+		assertRefused(withLong(good, index, 0));
+		assertRefused(withLong(good, index + 8, good.length));
+		assertRefused(withLong(good, index + 16, -5));
+		assertRefused(withLong(good, index + 16, 32));
+	}
+
+	private void assertRefused(byte[] bytes) throws IOException
+	{
+		Files.write(file, bytes);
+		try {
+			Replay.open(file).close();
+			fail("A damaged replay was opened");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static byte[] withInt(byte[] b, int pos, int v)
+	{
+		byte[] c = b.clone();
+		ByteBuffer.wrap(c).putInt(pos, v);
+		return c;
+	}
+
+	private static byte[] withLong(byte[] b, int pos, long v)
+	{
+		byte[] c = b.clone();
+		ByteBuffer.wrap(c).putLong(pos, v);
+		return c;
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for the tablebase of boards of 2s and 4s
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+public class TestTablebase
+{
+	// the cap 2 table takes several seconds to build, so the tests share one
+	private static Path built;
+
+	private static Path table() throws IOException
+	{
+		if (built == null) {
+			Path file = Files.createTempFile("tablebase", ".tb");
+			file.toFile().deleteOnExit();
+			Tablebase.build(file, 2, Rules.STANDARD, Runtime.getRuntime().availableProcessors()).close();
+			built = file;
+		}
+		return built;
+	}
+
+	@Test
+	// Boards whose values are known by hand
+	public void testKnownValues() throws IOException
+	{
+		Tablebase tb = Tablebase.open(table());
+		try {
+			// two adjacent 4s can always be merged into an 8, now or after moving down
+			long fours = BitBoard.pack(new int[][] {{4,4,0,0},{0,0,0,0},{0,0,0,0},{0,0,0,0}});
+			assertTrue(tb.probe(fours) == 1.0f);
+			assertTrue(tb.bestMove(fours) >= 0);
+
+			// a full checkerboard of 2s and 4s has no move
+			long stuck = BitBoard.pack(new int[][] {{2,4,2,4},{4,2,4,2},{2,4,2,4},{4,2,4,2}});
+			assertTrue(tb.probe(stuck) == 0.0f);
+			assertTrue(tb.bestMove(stuck) == -1);
+		}
+		finally {
+			tb.close();
+		}
+	}
+
+	@Test
+	// Every stored value is the best move's average over the new tiles, to float precision
+	public void testValuesAreConsistent() throws IOException
+	{
+		Tablebase tb = Tablebase.open(table());
+		try {
+			Random rand = new Random(5);
+			for (int k=0; k<2000; k++) {
+				long b = 0;
+				for (int i=0; i<16; i++) {
+					b |= (long) rand.nextInt(3) << (4*i);
+				}
+				double best = 0;
+				for (int dir=0; dir<4; dir++) {
+					long next = BitBoard.move(b, dir);
+					if (next != b) {
+						best = Math.max(best, afterMove(tb, next));
+					}
+				}
+				double v = tb.probe(b);
+				assertTrue(v + " != " + best, Math.abs(v - best) <= 1e-6 * best + 1e-30);
+			}
+		}
+		finally {
+			tb.close();
+		}
+	}
+
+	// the value of a board after a move, worked out from the table in double precision
+	private static double afterMove(Tablebase tb, long next)
+	{
+		if (BitBoard.maxExponent(next) > 2) {
+			return 1;
+		}
+		double four = Rules.STANDARD.getFourChance();
+		double total = 0;
+		for (int i=0; i<16; i++) {
+			if (((next >>> (4*i)) & 0xF) == 0) {
+				total += (1 - four) * tb.probe(next | 1L << (4*i));
+				total += four * tb.probe(next | 2L << (4*i));
+			}
+		}
+		return total / BitBoard.countEmpty(next);
+	}
+
+	@Test
+	// A build stopped part of the way through finishes with the same file
+	public void testResume() throws IOException
+	{
+		Path file = Files.createTempFile("tablebase", ".tb");
+		try {
+			Files.copy(table(), file, StandardCopyOption.REPLACE_EXISTING);
+			long chunks = (Files.size(file) - Tablebase.HEADER_SIZE) / 4 / Tablebase.CHUNK;
+			long done = chunks * 3 / 4;
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				// the header records the chunks finished before the stop
+				ByteBuffer n = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+				n.putLong(0, done);
+				ch.write(n, 16);
+				// later chunks are partly solved, as the boards below solved ones are
+				ByteBuffer zeros = ByteBuffer.allocate(4 * Tablebase.CHUNK);
+				for (long c=done; c<chunks; c+=2) {
+					zeros.clear();
+					ch.write(zeros, Tablebase.HEADER_SIZE + 4 * c * Tablebase.CHUNK);
+				}
+			}
+			try {
+				Tablebase.open(file);
+				fail("An unfinished tablebase was opened");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+
+			Tablebase.build(file, 2, Rules.STANDARD, 2).close();
+			assertTrue(crc(file) == crc(table()));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	// Files that are not tablebases are left alone
+	public void testRejectsOtherFiles() throws IOException
+	{
+		Path file = Files.createTempFile("tablebase", ".tb");
+		try {
+			Files.write(file, new byte[] {1, 2, 3});
+			try {
+				Tablebase.build(file, 2, Rules.STANDARD, 1);
+				fail("A file that is not a tablebase was built over");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+			assertTrue(Files.size(file) == 3);
+			try {
+				Tablebase.open(file);
+				fail("A file that is not a tablebase was opened");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	private static long crc(Path file) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (ch.read(buf) >= 0) {
+				buf.flip();
+				crc.update(buf);
+				buf.clear();
+			}
+		}
+		return crc.getValue();
+	}
+}
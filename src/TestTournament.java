@@ -0,0 +1,74 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for comparing policies with the sequential test
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+public class TestTournament
+{
+	private static Supplier<Policy> policy(String name)
+	{
+		return Policy.byName(name, Rules.STANDARD, ForkJoinPool.commonPool());
+	}
+
+	@Test
+	// The same policy on the same tiles plays the same games, so every pair is a tie
+	public void testIdenticalPolicies()
+	{
+		Tournament t = new Tournament(policy("greedy"), policy("greedy"), Rules.STANDARD, 2);
+		assertTrue(t.run(300, 1, 0.05, 0.05) == 0);
+		assertTrue(t.getPairs() == 300);
+		assertTrue(t.getLLR() == 0);
+	}
+
+	@Test
+	// Random moves are drawn from the seed of the game, so two random players tie every pair
+	public void testRandomPolicySeeded()
+	{
+		Tournament t = new Tournament(policy("random"), policy("random"), Rules.STANDARD, 3);
+		assertTrue(t.run(300, 5, 0.05, 0.05) == 0);
+		assertTrue(t.getPairs() == 300);
+		assertTrue(t.getLLR() == 0);
+	}
+
+	@Test
+	// A tournament with a random player ends the same way on any number of threads
+	public void testReproducibleAcrossThreads()
+	{
+		// a delta this small cannot stop the test early, as stops are only checked between batches,
+		// whose size depends on the number of threads
+		Tournament one = new Tournament(policy("random"), policy("greedy"), Rules.STANDARD, 1);
+		Tournament four = new Tournament(policy("random"), policy("greedy"), Rules.STANDARD, 4);
+		assertTrue(one.run(256, 9, 0.001, 0.05) == 0);
+		assertTrue(four.run(256, 9, 0.001, 0.05) == 0);
+		assertTrue(one.getLLR() == four.getLLR());
+		assertTrue(one.getLLR() < 0);
+	}
+
+	@Test
+	// Playing by the evaluator is far better than playing at random
+	public void testStrongerPolicyAccepted()
+	{
+		Tournament t = new Tournament(policy("greedy"), policy("random"), Rules.STANDARD, 2);
+		assertTrue(t.run(10_000, 1, 0.05, 0.05) == 1);
+		assertTrue(t.getLLR() >= Math.log(0.95 / 0.05));
+		assertTrue(t.getPairs() < 10_000);
+
+		// the same comparison the other way round accepts the other hypothesis
+		t = new Tournament(policy("random"), policy("greedy"), Rules.STANDARD, 2);
+		assertTrue(t.run(10_000, 1, 0.05, 0.05) == -1);
+		assertTrue(t.getLLR() <= -Math.log(0.95 / 0.05));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPolicy()
+	{
+		policy("nobody");
+	}
+}
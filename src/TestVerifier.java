@@ -0,0 +1,219 @@
+/**
+ * Author: Samarth Kumar (kumars38)
+ * Revised: Apr. 12th, 2021
+ *
+ * Description: Test cases for checking batches of submitted games
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestVerifier
+{
+	// where the first game of a batch starts, and where its moves start
+	private static final int FIRST_GAME = 24;
+	private static final int FIRST_MOVES = FIRST_GAME + 24;
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = Files.createTempFile("batch", ".vb");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		Files.delete(file);
+		GameBoard.init(4, 4);
+		GameBoard.resetHighScore();
+	}
+
+	// plays random moves through GameBoard until the game ends, as a client
+	// would, and returns the number of moves
+	private static int play(long seed, byte[] dirs)
+	{
+		Random moves = new Random(~seed);
+		GameBoard.setSeed(seed);
+		GameBoard.init(4, 4);
+		int n = 0;
+		while (GameBoard.getStatus()) {
+			int dir = moves.nextInt(4);
+			switch (dir) {
+				case BitBoard.UP: GameBoard.shiftUp(); break;
+				case BitBoard.DOWN: GameBoard.shiftDown(); break;
+				case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+				default: GameBoard.shiftRight(); break;
+			}
+			dirs[n++] = (byte) dir;
+			GameBoard.checkGameOver();
+			if (GameBoard.getStatus() && GameBoard.hasMoved()) {
+				GameBoard.addRandomTile();
+				GameBoard.checkGameOver();
+			}
+		}
+		return n;
+	}
+
+	@Test
+	// Honest games are accepted, and games with a raised score are not
+	public void testRandomGames() throws IOException
+	{
+		Verifier.writeRandomGames(file, 20, 4, 7, 5);
+		Verifier v = new Verifier(3);
+		v.verify(file);
+		assertTrue(v.games() == 20);
+		assertTrue(v.moves() > 0);
+		assertTrue(Arrays.equals(v.rejected(), new long[] {4, 9, 14, 19}));
+		assertTrue(v.reason(0).startsWith("the score is"));
+	}
+
+	@Test
+	// A claimed score or board other than the one reached, or a board too small
+	public void testForgedClaims() throws IOException
+	{
+		byte[] dirs = new byte[1 << 12];
+		byte[] board = new byte[16];
+		try (Verifier.Writer w = new Verifier.Writer(file, Rules.STANDARD)) {
+			int n = play(11, dirs);
+			GameBoard.copyExponents(board);
+			long score = GameBoard.getScore();
+			w.add(11, 4, 4, dirs, n, score, board);
+			// a score that is still a multiple of 4, as real scores are
+			w.add(11, 4, 4, dirs, n, score + 4, board);
+			// the right score with a different board
+			board[0]++;
+			w.add(11, 4, 4, dirs, n, score, board);
+			w.add(11, 3, 3, dirs, 0, 0, new byte[9]);
+		}
+		Verifier v = new Verifier(2);
+		v.verify(file);
+		assertTrue(Arrays.equals(v.rejected(), new long[] {1, 2, 3}));
+		assertTrue(v.reason(0).startsWith("the score is"));
+		assertTrue(v.reason(1).startsWith("the board differs at row 0, column 0"));
+		assertTrue(v.reason(2).equals("the board is 3x3"));
+	}
+
+	@Test
+	// Moves after the end of the game, and bits set after the last move
+	public void testIllegalMoves() throws IOException
+	{
+		byte[] dirs = new byte[1 << 12];
+		byte[] board = new byte[16];
+		long seed = 1;
+		int n;
+		// a game whose last byte of moves has unused bits
+		while ((n = play(seed, dirs)) % 4 == 0) {
+			seed++;
+		}
+		GameBoard.copyExponents(board);
+		try (Verifier.Writer w = new Verifier.Writer(file, Rules.STANDARD)) {
+			w.add(seed, 4, 4, dirs, n, GameBoard.getScore(), board);
+		}
+		Verifier v = new Verifier(1);
+		v.verify(file);
+		assertTrue(v.rejected().length == 0);
+
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[FIRST_MOVES + n / 4] |= (byte) (3 << 2 * (n % 4));
+		Files.write(file, bytes);
+		v.verify(file);
+		assertTrue(Arrays.equals(v.rejected(), new long[] {0}));
+		assertTrue(v.reason(0), v.reason(0).startsWith("the moves have bits set after move " + n));
+
+		// the same game with one more move
+		dirs[n] = BitBoard.UP;
+		try (Verifier.Writer w = new Verifier.Writer(file, Rules.STANDARD)) {
+			w.add(seed, 4, 4, dirs, n + 1, GameBoard.getScore(), board);
+		}
+		v.verify(file);
+		assertTrue(Arrays.equals(v.rejected(), new long[] {0}));
+		assertTrue(v.reason(0), v.reason(0).equals("move " + (n + 1) + " of " + (n + 1) + " is after the end of the game"));
+	}
+
+	@Test
+	// A batch whose games do not fill it exactly is refused as a whole
+	public void testTruncatedRecord() throws IOException
+	{
+		Verifier.writeRandomGames(file, 3, 4, 2, 0);
+		byte[] good = Files.readAllBytes(file);
+		int footer = good.length - 12;
+		Verifier v = new Verifier(2);
+
+		// the last byte of the last board is missing, but the footer is intact
+		byte[] cut = new byte[good.length - 1];
+		System.arraycopy(good, 0, cut, 0, footer - 1);
+		System.arraycopy(good, footer, cut, footer - 1, 12);
+		assertRefused(v, cut, "Game 2 is cut short");
+
+		// the footer claims more games than there are
+		byte[] more = good.clone();
+		ByteBuffer.wrap(more).putLong(footer, 4);
+		assertRefused(v, more, "Game 3 is cut short");
+
+		// the first game claims more moves than the batch holds
+		byte[] longer = good.clone();
+		ByteBuffer.wrap(longer).putInt(FIRST_GAME + 12, -1);
+		assertRefused(v, longer, "Game 0 is cut short");
+
+		// no footer at all
+		assertRefused(v, Arrays.copyOf(good, footer), "Not a complete batch file");
+	}
+
+	private void assertRefused(Verifier v, byte[] bytes, String message) throws IOException
+	{
+		Files.write(file, bytes);
+		try {
+			v.verify(file);
+			fail("A damaged batch was checked");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().equals(message));
+		}
+	}
+
+	@Test
+	// An exception while checking a game rejects that game alone
+	public void testCheckThrows() throws IOException
+	{
+		Verifier.writeRandomGames(file, 600, 4, 3, 0);
+		Verifier v = new Verifier(3);
+		v.beforeCheck = i -> {
+			if (i == 3 || i == 300) {
+				throw new IllegalStateException("game " + i + " is broken");
+			}
+		};
+		v.verify(file);
+		assertTrue(v.games() == 600);
+		assertTrue(Arrays.equals(v.rejected(), new long[] {3, 300}));
+		assertTrue(v.reason(0), v.reason(0).equals("checking the game threw java.lang.IllegalStateException: game 3 is broken"));
+	}
+
+	@Test
+	// A thread that dies loses its games, so the whole batch fails
+	public void testWorkerFails() throws IOException
+	{
+		Verifier.writeRandomGames(file, 600, 4, 3, 0);
+		Verifier v = new Verifier(3);
+		Error error = new StackOverflowError();
+		v.beforeCheck = i -> {
+			if (i == 300) {
+				throw error;
+			}
+		};
+		try {
+			v.verify(file);
+			fail("A batch was checked after a thread failed");
+		}
+		catch (IllegalStateException e) {
+			assertTrue(e.getCause() == error);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * @file TiledBoard.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a board stored in square blocks, for very large boards
+ * @date Apr. 12th, 2021
+ */
+
+/**
+ * @brief A board of any size stored as square tiles of cells
+ * @details The cells are kept in one array, split into square blocks of up to
+ * 64x64 cells (16KB) that are each stored row by row. A row of the board is
+ * then a few contiguous runs, so horizontal moves stream through memory.
+ * Vertical moves would have to step a whole block row at a time, so instead
+ * the board is transposed block by block and then moved horizontally. A block
+ * and its transposed copy both fit in cache, so the transpose reads and
+ * writes memory in order. The board stays transposed until the next
+ * horizontal move, so a run of vertical moves costs the same as a run of
+ * horizontal ones, and only a change between the two pays for a transpose.
+ * Moves follow the same rules as GameBoard, using GameBoard.slideLine for
+ * each line.
+ */
+public class TiledBoard {
+
+	private static final int MAX_SHIFT = 6; // blocks of 64x64
+
+	private final int rows, cols;
+	private final int shift, block, mask;
+	private final int tilesDown, tilesAcross;
+	private int[] cells;
+	private int[] spare; // target of the transpose, allocated on the first vertical move
+	private boolean transposed; // cells holds the columns of the board as rows
+	private final int[] line;
+
+	/**
+	 * @brief Constructs an empty board
+	 * @param rows Integer representing the number of rows
+	 * @param cols Integer representing the number of columns
+	 * @throws IllegalArgumentException If either size is less than 1
+	 */
+	public TiledBoard(int rows, int cols) {
+		if (rows < 1 || cols < 1) {
+			throw new IllegalArgumentException("A board needs at least one row and column");
+		}
+		this.rows = rows;
+		this.cols = cols;
+		// small boards use smaller blocks, so they are not padded out to 64x64
+		int s = 0;
+		while (s < MAX_SHIFT && (1 << s) < Math.max(rows, cols)) {
+			s++;
+		}
+		this.shift = s;
+		this.block = 1 << s;
+		this.mask = block - 1;
+		this.tilesDown = (rows + mask) >> s;
+		this.tilesAcross = (cols + mask) >> s;
+		this.cells = new int[tilesDown * tilesAcross << (2*s)];
+		this.line = new int[Math.max(rows, cols)];
+	}
+
+	/**
+	 * @brief Constructs a board holding a copy of the given cells
+	 * @param b 2D array of integers representing the board
+	 */
+	public TiledBoard(int[][] b) {
+		this(b.length, b[0].length);
+		load(b);
+	}
+
+	/**
+	 * @brief Replaces the cells with a copy of the given board
+	 * @param b 2D array of integers of the same size as this board
+	 * @throws IllegalArgumentException If the size differs
+	 */
+	public void load(int[][] b) {
+		if (b.length != rows || b[0].length != cols) {
+			throw new IllegalArgumentException("Expected a " + rows + "x" + cols + " board");
+		}
+		transposed = false;
+		for (int r=0; r<rows; r++) {
+			writeRow(cells, tilesAcross, r, b[r], cols);
+		}
+	}
+
+	/**
+	 * @brief Copies the cells into a 2D array
+	 * @param b 2D array of integers of the same size as this board
+	 */
+	public void copyTo(int[][] b) {
+		orient(false);
+		for (int r=0; r<rows; r++) {
+			readRow(cells, tilesAcross, r, b[r], cols);
+		}
+	}
+
+	/**
+	 * @brief Gets the cells as a new 2D array
+	 * @return 2D array of integers representing the board
+	 */
+	public int[][] toArray() {
+		int[][] b = new int[rows][cols];
+		copyTo(b);
+		return b;
+	}
+
+	/**
+	 * @brief Gets the number of rows
+	 * @return Number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @brief Gets the number of columns
+	 * @return Number of columns
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * @brief Gets the value of a cell
+	 * @param r Row of the cell
+	 * @param c Column of the cell
+	 * @return Value of the tile, or 0 if the cell is empty
+	 */
+	public int get(int r, int c) {
+		return cells[transposed ? index(tilesDown, c, r) : index(tilesAcross, r, c)];
+	}
+
+	/**
+	 * @brief Sets the value of a cell
+	 * @param r Row of the cell
+	 * @param c Column of the cell
+	 * @param v Value of the tile, or 0 to empty the cell
+	 */
+	public void set(int r, int c, int v) {
+		cells[transposed ? index(tilesDown, c, r) : index(tilesAcross, r, c)] = v;
+	}
+
+	/**
+	 * @brief Moves all tiles in a direction
+	 * @param dir Direction to move in (BitBoard.UP, DOWN, LEFT or RIGHT)
+	 * @return Total value of the merged tiles
+	 */
+	public long move(int dir) {
+		if (dir == BitBoard.UP || dir == BitBoard.DOWN) {
+			// columns of this board are rows of the transposed one
+			orient(true);
+			return slideRows(cells, cols, rows, tilesDown, dir == BitBoard.DOWN);
+		}
+		orient(false);
+		return slideRows(cells, rows, cols, tilesAcross, dir == BitBoard.RIGHT);
+	}
+
+	/**
+	 * @brief Gets whether any move is possible
+	 * @return True if there is an empty cell or two equal neighbouring tiles
+	 */
+	public boolean canMove() {
+		for (int r=0; r<rows; r++) {
+			for (int c=0; c<cols; c++) {
+				int v = get(r, c);
+				if (v == 0 || (c+1 < cols && get(r, c+1) == v) || (r+1 < rows && get(r+1, c) == v)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// transposes the cells if they are not already in the wanted orientation
+	private void orient(boolean t) {
+		if (transposed == t) {
+			return;
+		}
+		if (spare == null) {
+			spare = new int[cells.length];
+		}
+		if (transposed) {
+			transpose(cells, spare, tilesAcross, tilesDown);
+		}
+		else {
+			transpose(cells, spare, tilesDown, tilesAcross);
+		}
+		int[] tmp = cells;
+		cells = spare;
+		spare = tmp;
+		transposed = t;
+	}
+
+	// slides every row of a tiled array of the given size, toward column 0 or away from it
+	private long slideRows(int[] a, int nRows, int nCols, int across, boolean reverse) {
+		long gained = 0;
+		for (int r=0; r<nRows; r++) {
+			readRow(a, across, r, line, nCols);
+			if (reverse) {
+				reverse(line, nCols);
+			}
+			gained += GameBoard.slideLine(line, nCols);
+			if (reverse) {
+				reverse(line, nCols);
+			}
+			writeRow(a, across, r, line, nCols);
+		}
+		return gained;
+	}
+
+	// copies a row out of a tiled array, one contiguous run per block
+	private void readRow(int[] a, int across, int r, int[] dst, int len) {
+		int base = ((r >> shift) * across << (2*shift)) + ((r & mask) << shift);
+		int blockSize = block << shift;
+		for (int c=0; c<len; c += block, base += blockSize) {
+			System.arraycopy(a, base, dst, c, Math.min(block, len - c));
+		}
+	}
+
+	private void writeRow(int[] a, int across, int r, int[] src, int len) {
+		int base = ((r >> shift) * across << (2*shift)) + ((r & mask) << shift);
+		int blockSize = block << shift;
+		for (int c=0; c<len; c += block, base += blockSize) {
+			System.arraycopy(src, c, a, base, Math.min(block, len - c));
+		}
+	}
+
+	// transposes a board of down x across blocks into one of across x down blocks
+	private void transpose(int[] src, int[] dst, int down, int across) {
+		int blockSize = block << shift;
+		for (int tr=0; tr<down; tr++) {
+			for (int tc=0; tc<across; tc++) {
+				int from = (tr * across + tc) * blockSize;
+				int to = (tc * down + tr) * blockSize;
+				for (int i=0; i<block; i++) {
+					for (int j=0; j<block; j++) {
+						dst[to + (j << shift) + i] = src[from + (i << shift) + j];
+					}
+				}
+			}
+		}
+	}
+
+	private int index(int across, int r, int c) {
+		return (((r >> shift) * across + (c >> shift)) << (2*shift)) + ((r & mask) << shift) + (c & mask);
+	}
+
+	private static void reverse(int[] a, int len) {
+		for (int i=0, j=len-1; i<j; i++, j--) {
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+	}
+}
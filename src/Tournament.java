@@ -0,0 +1,242 @@
+/**
+ * @file Tournament.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a harness for comparing two computer players
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * @brief Plays two policies against each other until one is shown to be better
+ * @details Both policies play a game from every seed, and a seed fixes the
+ * sequence of random numbers used for new tiles, so the two games of a pair
+ * see the same luck (common random numbers) and only the moves differ. A pair
+ * is a win for the policy with the higher score. Games are played in batches
+ * across all cores, and after each batch a sequential probability ratio test
+ * (SPRT) decides between "A wins a pair with probability 1/2 + delta" and
+ * "B wins a pair with probability 1/2 + delta". The tournament stops as soon as
+ * either is accepted, so clear differences are settled in far fewer games
+ * than a fixed count would need.
+ */
+public class Tournament {
+
+	private final Supplier<Policy> a, b;
+	private final Rules rules;
+	private final int threads;
+
+	// results so far
+	private long pairs, winsA, winsB;
+	private double llr;
+	private double sumA, sumSqA, sumB, sumSqB, sumDiff, sumSqDiff;
+
+	/**
+	 * @brief Constructs a tournament between two policies
+	 * @param a Supplier of the first policy
+	 * @param b Supplier of the second policy
+	 * @param rules Rules for the games
+	 * @param threads Number of threads to play on
+	 */
+	public Tournament(Supplier<Policy> a, Supplier<Policy> b, Rules rules, int threads) {
+		this.a = a;
+		this.b = b;
+		this.rules = rules;
+		this.threads = threads;
+	}
+
+	/**
+	 * @brief Plays pairs of games until the test stops or the limit is reached
+	 * @param maxPairs Largest number of pairs to play
+	 * @param seed Seed of the first pair, later pairs use the following seeds
+	 * @param delta Smallest difference from an even win rate worth detecting
+	 * @param alpha Chance of accepting the wrong policy as better
+	 * @return The result of the test: 1 if A is better, -1 if B is better,
+	 * or 0 if the limit was reached first
+	 */
+	public int run(long maxPairs, long seed, double delta, double alpha) {
+		// with symmetric hypotheses the log likelihood ratio is
+		// (wins A - wins B) * log((1/2 + delta) / (1/2 - delta))
+		double step = Math.log((0.5 + delta) / (0.5 - delta));
+		double bound = Math.log((1 - alpha) / alpha);
+
+		int batch = threads * 32;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			// each worker keeps its own pair of policies
+			Policy[] pa = new Policy[threads];
+			Policy[] pb = new Policy[threads];
+			for (int t=0; t<threads; t++) {
+				pa[t] = a.get();
+				pb[t] = b.get();
+			}
+
+			while (pairs < maxPairs) {
+				long first = seed + pairs;
+				int n = (int) Math.min(batch, maxPairs - pairs);
+				List<Future<long[]>> results = new ArrayList<>();
+				for (int t=0; t<threads; t++) {
+					int id = t;
+					results.add(pool.submit(() -> {
+						long[] scores = new long[2 * n];
+						for (int i=id; i<n; i += threads) {
+							scores[2*i] = play(pa[id], first + i);
+							scores[2*i + 1] = play(pb[id], first + i);
+						}
+						return scores;
+					}));
+				}
+				for (int t=0; t<threads; t++) {
+					long[] scores = results.get(t).get();
+					for (int i=t; i<n; i += threads) {
+						record(scores[2*i], scores[2*i + 1]);
+					}
+				}
+
+				llr = (winsA - winsB) * step;
+				if (llr >= bound) {
+					return 1;
+				}
+				if (llr <= -bound) {
+					return -1;
+				}
+			}
+			return 0;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The tournament was interrupted", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("A game failed", e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @brief Plays a single game with a policy
+	 * @param p Policy to play with
+	 * @param seed Seed for the new tiles
+	 * @return Final score of the game
+	 */
+	long play(Policy p, long seed) {
+		p.newGame(seed);
+		SplittableRandom rand = new SplittableRandom(seed);
+		double four = rules.getFourChance();
+		long board = BitBoard.spawn(BitBoard.spawn(0, rand, four), rand, four);
+		long score = 0;
+		while (true) {
+			int dir = p.chooseMove(board);
+			if (dir < 0) {
+				return score;
+			}
+			long next = BitBoard.move(board, dir);
+			if (next == board) {
+				// a policy that makes no progress has lost
+				return score;
+			}
+			score += BitBoard.moveScore(board, dir);
+			board = BitBoard.spawn(next, rand, four);
+		}
+	}
+
+	private void record(long scoreA, long scoreB) {
+		pairs++;
+		if (scoreA > scoreB) {
+			winsA++;
+		}
+		else if (scoreB > scoreA) {
+			winsB++;
+		}
+		sumA += scoreA;
+		sumSqA += (double) scoreA * scoreA;
+		sumB += scoreB;
+		sumSqB += (double) scoreB * scoreB;
+		double d = scoreA - scoreB;
+		sumDiff += d;
+		sumSqDiff += d * d;
+	}
+
+	/**
+	 * @brief Gets the number of pairs of games played so far
+	 * @return Number of pairs
+	 */
+	public long getPairs() {
+		return pairs;
+	}
+
+	/**
+	 * @brief Gets the log likelihood ratio of the test after the last batch
+	 * @return Positive values favour A being better, negative values B
+	 */
+	public double getLLR() {
+		return llr;
+	}
+
+	/**
+	 * @brief Prints the win rates, and the mean scores with 95% confidence intervals
+	 */
+	public void printResults() {
+		System.out.printf("Pairs played:  %,d%n", pairs);
+		System.out.printf("Win rate A:    %.3f%n", (double) winsA / pairs);
+		System.out.printf("Win rate B:    %.3f%n", (double) winsB / pairs);
+		System.out.printf("Ties:          %.3f%n", (double) (pairs - winsA - winsB) / pairs);
+		printMean("Mean score A:", sumA, sumSqA);
+		printMean("Mean score B:", sumB, sumSqB);
+		printMean("Mean A - B:", sumDiff, sumSqDiff);
+	}
+
+	private void printMean(String label, double sum, double sumSq) {
+		double mean = sum / pairs;
+		double var = pairs > 1 ? (sumSq - pairs * mean * mean) / (pairs - 1) : 0;
+		double half = 1.96 * Math.sqrt(Math.max(var, 0) / pairs);
+		System.out.printf("%-14s %.1f +/- %.1f%n", label, mean, half);
+	}
+
+	/**
+	 * @brief Runs a tournament from the command line
+	 * @details Usage: java Tournament <policyA> <policyB> [maxPairs] [seed].
+	 * See Policy.byName for the policy names.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java Tournament <policyA> <policyB> [maxPairs] [seed]");
+			System.exit(1);
+		}
+		long maxPairs = args.length > 2 ? Long.parseLong(args[2]) : 100_000;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Rules rules = Rules.STANDARD;
+
+		// searching players share one pool with a thread for each core
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		Tournament t;
+		int result;
+		long start = System.nanoTime();
+		try (Policy.Factory a = Policy.byName(args[0], rules, pool);
+				Policy.Factory b = Policy.byName(args[1], rules, pool)) {
+			t = new Tournament(a, b, rules, threads);
+			result = t.run(maxPairs, seed, 0.05, 0.05);
+		}
+		finally {
+			pool.shutdown();
+		}
+		double secs = (System.nanoTime() - start) / 1e9;
+
+		t.printResults();
+		String verdict = result > 0 ? args[0] + " is better"
+				: result < 0 ? args[1] + " is better"
+				: "no decision within " + maxPairs + " pairs";
+		System.out.printf("Result:        %s (%.1f s)%n", verdict, secs);
+	}
+}
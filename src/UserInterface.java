@@ -14,18 +14,20 @@ public class UserInterface {
 	
 	/**
 	 * @brief Prints the scores for the game to the screen
-	 * @param score Integer representing the score of the current game
-	 * @param highScore Integer representing the highest score achieved across
+	 * @param score Long representing the score of the current game
+	 * @param highScore Long representing the highest score achieved across
 	 * all games
 	 */
-	public static void printScore(int score, int highScore) {
-		// Clear* output
+	public static void printScore(long score, long highScore) {
+		// Clear* output, built up first so that it is written all at once
+		StringBuilder sb = new StringBuilder();
 		for (int i=0; i<20; i++) {
-			System.out.println();
+			sb.append('\n');
 		}
-		System.out.println("High Score: "+highScore);
-		System.out.println("Current Score: "+score);
-		System.out.println("======================");
+		sb.append("High Score: ").append(highScore).append('\n');
+		sb.append("Current Score: ").append(score).append('\n');
+		sb.append("======================");
+		System.out.println(sb);
 	}
 
 	/**
@@ -35,17 +37,19 @@ public class UserInterface {
 	 */	
 	public static void printBoard(int[][] b) {
 		int numSpaces = 5;
+		// build the whole board first, so that it is written all at once
+		StringBuilder sb = new StringBuilder();
 		for (int[] row : b) {
 			for (int cell : row) {
-				String s = Integer.toString(cell);
-				System.out.print(s);
-				for (int i=s.length(); i<numSpaces; i++) {
-					System.out.print(" ");
+				int start = sb.length();
+				sb.append(cell);
+				for (int i=sb.length()-start; i<numSpaces; i++) {
+					sb.append(' ');
 				}
 			}
-			System.out.println("\n");
+			sb.append("\n\n");
 		}
-		System.out.println();
+		System.out.println(sb);
 	}
 	
 	/**
@@ -70,7 +74,16 @@ public class UserInterface {
 	 * @details The user input is handled by the Controller
 	 */	
 	public static void printMovePrompt() {
-		System.out.print("Enter move (l, r, u, or d): ");
+		System.out.print("Enter move (l, r, u, or d, or h for a hint): ");
+	}
+	
+	/**
+	 * @brief Prints where a final score places on the leaderboard
+	 * @param rank Long representing the approximate rank of the score
+	 * @param count Long representing the number of scores on the leaderboard
+	 */
+	public static void printRank(long rank, long count) {
+		System.out.println("Leaderboard rank: "+rank+" of "+count+".");
 	}
 	
 	/**
@@ -78,13 +91,14 @@ public class UserInterface {
 	 * @details Prints a congratulatory or game over message depending on
 	 * if the user won. The score and high score are also printed. The user
 	 * is asked whether they want to play again.
-	 * @param won Boolean which is true if the user won (reached 2048), false otherwise
-	 * @param score Integer representing the final score for the game
-	 * @param highScore Integer representing the high score across all games 
+	 * @param won Boolean which is true if the user won (reached the winning tile), false otherwise
+	 * @param winTile Integer representing the tile needed to win
+	 * @param score Long representing the final score for the game
+	 * @param highScore Long representing the high score across all games 
 	 */	
-	public static void printEndingMessage(boolean won, int score, int highScore) {
+	public static void printEndingMessage(boolean won, int winTile, long score, long highScore) {
 		if (won) {
-			System.out.println("Congratulations, you reached 2048.");
+			System.out.println("Congratulations, you reached "+winTile+".");
 		}
 		else {
 			System.out.println("Game over!");
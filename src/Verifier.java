@@ -0,0 +1,522 @@
+/**
+ * @file Verifier.java
+ * @author Samarth Kumar (kumars38)
+ * @brief Contains a checker for batches of submitted games and their claimed scores
+ * @date Apr. 12th, 2021
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * @brief Plays submitted games again from their seeds and moves, and rejects
+ * any whose final board or score is not the one claimed
+ * @details A submitted game is what a client played after
+ * GameBoard.setSeed(seed) and GameBoard.init(rows, cols, rules): its
+ * seed, its moves in the order they were entered (including moves that did
+ * not change the board), and the score and board it claims to have reached.
+ * Games are played again with GameBoard.move, GameBoard.spawn and
+ * GameBoard.canMove, the code the game itself runs, on boards and Randoms
+ * belonging to each thread, so a batch is checked on every core and nothing
+ * is allocated for each move. A game is also rejected if it has moves after
+ * its end, a board smaller than 4x4, or bits set after its last move. A
+ * game whose check throws an exception is rejected with the exception as
+ * its reason, so one bad game cannot hide the rest of a batch.
+ *
+ * A batch file is a 24 byte header (magic, winning tile, keep playing, a
+ * spare int, chance of a 4), then the games, then the number of games and
+ * the magic again. Each game is its seed, rows and cols as shorts, the
+ * number of moves, the claimed score, the moves packed four to a byte
+ * (the first in the lowest two bits) and the claimed board in the format
+ * of GameBoard.copyExponents. A batch is memory-mapped, so it can be at
+ * most 2 GB.
+ */
+public class Verifier {
+
+	private static final int MAGIC = 0x32305642; // "20VB"
+	private static final int HEADER_SIZE = 24;
+	private static final int FOOTER_SIZE = 12;
+	private static final int GAME_HEADER_SIZE = 24;
+	private static final int MAX_CELLS = 1 << 20;
+
+	// games handed to a thread at a time
+	private static final int CHUNK = 256;
+
+	/**
+	 * @brief Writes games to a batch file
+	 */
+	public static class Writer implements Closeable {
+		private final DataOutputStream out;
+		private long games;
+
+		/**
+		 * @brief Starts a batch
+		 * @param file Path of the file, which is replaced
+		 * @param rules Rules every game of the batch was played under
+		 * @throws IOException If the file cannot be written
+		 */
+		public Writer(Path file, Rules rules) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(rules.getWinTile());
+			out.writeInt(rules.keepPlaying() ? 1 : 0);
+			out.writeInt(0);
+			out.writeDouble(rules.getFourChance());
+		}
+
+		/**
+		 * @brief Adds a game
+		 * @param seed Seed given to GameBoard.setSeed before the game started
+		 * @param rows Integer representing the number of rows in the board
+		 * @param cols Integer representing the number of columns in the board
+		 * @param dirs Directions of the moves (BitBoard.UP, DOWN, LEFT or RIGHT)
+		 * @param moves Number of moves, which are the first entries of dirs
+		 * @param score Claimed final score
+		 * @param board Claimed final board, in the format of GameBoard.copyExponents
+		 * @throws IllegalArgumentException If the board does not hold rows * cols
+		 * cells, or the size does not fit in a batch
+		 * @throws IOException If the file cannot be written
+		 */
+		public void add(long seed, int rows, int cols, byte[] dirs, int moves, long score, byte[] board)
+				throws IOException {
+			if (rows < 1 || cols < 1 || rows > 0xFFFF || cols > 0xFFFF
+					|| board.length != (long) rows * cols) {
+				throw new IllegalArgumentException("The board does not have " + rows + "x" + cols + " cells.");
+			}
+			out.writeLong(seed);
+			out.writeShort(rows);
+			out.writeShort(cols);
+			out.writeInt(moves);
+			out.writeLong(score);
+			for (int i=0; i<moves; i+=4) {
+				int packed = 0;
+				for (int j=0; j<4 && i+j<moves; j++) {
+					packed |= (dirs[i+j] & 3) << (2 * j);
+				}
+				out.writeByte(packed);
+			}
+			out.write(board);
+			games++;
+		}
+
+		/**
+		 * @brief Gets the number of games added
+		 * @return Number of games
+		 */
+		public long games() {
+			return games;
+		}
+
+		/**
+		 * @brief Writes the number of games and closes the file
+		 * @throws IOException If the file cannot be written
+		 */
+		public void close() throws IOException {
+			out.writeLong(games);
+			out.writeInt(MAGIC);
+			out.close();
+		}
+	}
+
+	private final int threads;
+	private long games, moves, nanos;
+	private long[] rejected = new long[0];
+	private String[] reasons = new String[0];
+
+	// called with the number of each game before it is checked, so tests can
+	// make a check fail
+	IntConsumer beforeCheck = i -> { };
+
+	/**
+	 * @brief Creates a verifier
+	 * @param threads Number of threads to check games on
+	 * @throws IllegalArgumentException If there are fewer than 1 threads
+	 */
+	public Verifier(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * @brief Checks every game of a batch
+	 * @details The results replace those of any earlier batch
+	 * @param file Path of the batch file
+	 * @throws IllegalArgumentException If the file is not a complete batch,
+	 * or is over 2 GB
+	 * @throws IllegalStateException If a thread fails, so that some games
+	 * may not have been checked
+	 * @throws IOException If the file cannot be read
+	 */
+	public void verify(Path file) throws IOException {
+		long start = System.nanoTime();
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = ch.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Batches over 2 GB must be split into several files");
+			}
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (size < HEADER_SIZE + FOOTER_SIZE || map.getInt(0) != MAGIC
+					|| map.getInt((int) size - 4) != MAGIC) {
+				throw new IllegalArgumentException("Not a complete batch file");
+			}
+			Rules rules = new Rules(map.getInt(4), map.getInt(8) != 0, map.getDouble(16));
+			int[] offsets = index(map, map.getLong((int) size - FOOTER_SIZE), (int) size - FOOTER_SIZE);
+
+			AtomicInteger next = new AtomicInteger();
+			Worker[] workers = new Worker[threads];
+			Thread[] running = new Thread[threads];
+			for (int t=0; t<threads; t++) {
+				workers[t] = new Worker(map.duplicate(), offsets, next, rules, beforeCheck);
+				running[t] = new Thread(workers[t]);
+				running[t].start();
+			}
+			List<Long> bad = new ArrayList<>();
+			List<String> why = new ArrayList<>();
+			moves = 0;
+			for (int t=0; t<threads; t++) {
+				try {
+					running[t].join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("The verifier was interrupted", e);
+				}
+				moves += workers[t].moves;
+				bad.addAll(workers[t].rejected);
+				why.addAll(workers[t].reasons);
+			}
+			for (Worker w : workers) {
+				if (w.failure != null) {
+					throw new IllegalStateException("A verifier thread failed, so the batch was not fully checked", w.failure);
+				}
+			}
+			games = offsets.length;
+
+			// report rejections in the order of the batch
+			Integer[] order = new Integer[bad.size()];
+			for (int i=0; i<order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Long.compare(bad.get(a), bad.get(b)));
+			rejected = new long[order.length];
+			reasons = new String[order.length];
+			for (int i=0; i<order.length; i++) {
+				rejected[i] = bad.get(order[i]);
+				reasons[i] = why.get(order[i]);
+			}
+		}
+		nanos = System.nanoTime() - start;
+	}
+
+	// finds where each game starts, checking that every game fits in the file
+	private static int[] index(ByteBuffer map, long count, int end) {
+		if (count < 0 || count > (end - HEADER_SIZE) / GAME_HEADER_SIZE) {
+			throw new IllegalArgumentException("The batch does not hold " + count + " games");
+		}
+		int[] offsets = new int[(int) count];
+		long pos = HEADER_SIZE;
+		for (int i=0; i<count; i++) {
+			if (pos + GAME_HEADER_SIZE > end) {
+				throw new IllegalArgumentException("Game " + i + " is cut short");
+			}
+			offsets[i] = (int) pos;
+			long rows = map.getShort((int) pos + 8) & 0xFFFF;
+			long cols = map.getShort((int) pos + 10) & 0xFFFF;
+			long n = map.getInt((int) pos + 12) & 0xFFFFFFFFL;
+			pos += GAME_HEADER_SIZE + (n + 3) / 4 + rows * cols;
+			if (pos > end) {
+				throw new IllegalArgumentException("Game " + i + " is cut short");
+			}
+		}
+		if (pos != end) {
+			throw new IllegalArgumentException("The batch has data after its last game");
+		}
+		return offsets;
+	}
+
+	// checks chunks of games until none are left, with a board and Random of its own
+	private static class Worker implements Runnable {
+		private final ByteBuffer map;
+		private final int[] offsets;
+		private final AtomicInteger next;
+		private final Rules rules;
+		private final int winExp;
+		private final boolean endOnWin;
+		private final IntConsumer beforeCheck;
+		private final Random rand = new Random();
+		private byte[] cells = new byte[16];
+		long moves;
+		final List<Long> rejected = new ArrayList<>();
+		final List<String> reasons = new ArrayList<>();
+		// anything other than an exception from a check, which stops the thread
+		Throwable failure;
+
+		Worker(ByteBuffer map, int[] offsets, AtomicInteger next, Rules rules, IntConsumer beforeCheck) {
+			this.map = map;
+			this.offsets = offsets;
+			this.next = next;
+			this.rules = rules;
+			this.beforeCheck = beforeCheck;
+			this.winExp = Integer.numberOfTrailingZeros(rules.getWinTile());
+			this.endOnWin = !rules.keepPlaying();
+		}
+
+		public void run() {
+			try {
+				int first;
+				while ((first = next.getAndAdd(CHUNK)) < offsets.length) {
+					int last = Math.min(first + CHUNK, offsets.length);
+					for (int i=first; i<last; i++) {
+						String reason;
+						try {
+							beforeCheck.accept(i);
+							reason = check(offsets[i]);
+						}
+						catch (Exception e) {
+							reason = "checking the game threw " + e;
+						}
+						if (reason != null) {
+							rejected.add((long) i);
+							reasons.add(reason);
+						}
+					}
+				}
+			}
+			catch (Throwable e) {
+				failure = e;
+			}
+		}
+
+		// plays one game again, returning null if it matches its claim, or why it does not
+		private String check(int pos) {
+			long seed = map.getLong(pos);
+			int rows = map.getShort(pos + 8) & 0xFFFF;
+			int cols = map.getShort(pos + 10) & 0xFFFF;
+			int count = map.getInt(pos + 12);
+			long claimed = map.getLong(pos + 16);
+			if (rows < 4 || cols < 4 || rows * cols > MAX_CELLS) {
+				return "the board is " + rows + "x" + cols;
+			}
+			if (count < 0) {
+				return "the game has " + Integer.toUnsignedString(count) + " moves";
+			}
+			int n = rows * cols;
+			if (cells.length != n) {
+				cells = new byte[n];
+			}
+			else {
+				Arrays.fill(cells, (byte) 0);
+			}
+
+			// the same steps as GameBoard.init and Controller.launch
+			rand.setSeed(seed);
+			GameBoard.spawn(cells, rand, rules);
+			GameBoard.spawn(cells, rand, rules);
+			long score = 0;
+			boolean won = false, over = false;
+			int dirs = pos + GAME_HEADER_SIZE;
+			for (int i=0; i<count; i++) {
+				if (over) {
+					return "move " + (i + 1) + " of " + count + " is after the end of the game";
+				}
+				int dir = (map.get(dirs + (i >>> 2)) >>> (2 * (i & 3))) & 3;
+				long g = GameBoard.move(cells, rows, cols, dir);
+				if (g > 0) {
+					score += g;
+					// new tiles are never the winning tile, so only a merge can win
+					if (!won && contains(cells, winExp)) {
+						won = true;
+						if (endOnWin) {
+							over = true;
+							continue;
+						}
+					}
+				}
+				if (g >= 0) {
+					GameBoard.spawn(cells, rand, rules);
+				}
+				over = !GameBoard.canMove(cells, rows, cols);
+			}
+			moves += count;
+
+			// the writer leaves the bits after the last move clear
+			if ((count & 3) != 0 && (map.get(dirs + (count >>> 2)) & 0xFF) >>> (2 * (count & 3)) != 0) {
+				return "the moves have bits set after move " + count;
+			}
+			if (score != claimed) {
+				return "the score is " + score + ", not " + claimed;
+			}
+			int board = dirs + (int) ((count + 3L) / 4);
+			for (int c=0; c<n; c++) {
+				if (map.get(board + c) != cells[c]) {
+					return "the board differs at row " + c / cols + ", column " + c % cols;
+				}
+			}
+			return null;
+		}
+
+		private static boolean contains(byte[] cells, int exp) {
+			for (byte e : cells) {
+				if (e == exp) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @brief Gets the number of games in the last batch
+	 * @return Number of games
+	 */
+	public long games() {
+		return games;
+	}
+
+	/**
+	 * @brief Gets the number of moves played again for the last batch
+	 * @details The moves of games rejected before their last move are not counted
+	 * @return Number of moves
+	 */
+	public long moves() {
+		return moves;
+	}
+
+	/**
+	 * @brief Gets how long the last batch took, including mapping and indexing it
+	 * @return Time in seconds
+	 */
+	public double seconds() {
+		return nanos / 1e9;
+	}
+
+	/**
+	 * @brief Gets the games of the last batch that were rejected
+	 * @return Numbers of the games, from 0 in the order of the batch, in increasing order
+	 */
+	public long[] rejected() {
+		return rejected.clone();
+	}
+
+	/**
+	 * @brief Gets why a game was rejected
+	 * @param i Index into rejected()
+	 * @return Description of the first difference found
+	 */
+	public String reason(int i) {
+		return reasons[i];
+	}
+
+	/**
+	 * @brief Prints the throughput and the rejected games of the last batch
+	 * @param limit Most rejected games to list
+	 */
+	public void printResults(int limit) {
+		double secs = seconds();
+		System.out.printf("Checked %,d games (%,d moves) on %d threads in %.2f s%n",
+				games, moves, threads, secs);
+		System.out.printf("  %,.0f games/s, %,.0f moves/s%n", games / secs, moves / secs);
+		System.out.printf("  %,d rejected%n", rejected.length);
+		for (int i=0; i<Math.min(limit, rejected.length); i++) {
+			System.out.printf("  game %d: %s%n", rejected[i], reasons[i]);
+		}
+		if (rejected.length > limit) {
+			System.out.printf("  ... and %,d more%n", rejected.length - limit);
+		}
+	}
+
+	/**
+	 * @brief Plays random games through GameBoard and writes them to a batch
+	 * @details Every tamper-th game has its claimed score raised by 2, so it
+	 * should be rejected. This is used for benchmarks and tests.
+	 * @param file Path of the batch file, which is replaced
+	 * @param games Number of games
+	 * @param size Number of rows and columns of each board
+	 * @param seed Seed of the first game, with the rest following it
+	 * @param tamper Gap between tampered games, or 0 for none
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void writeRandomGames(Path file, int games, int size, long seed, int tamper)
+			throws IOException {
+		Random moves = new Random(~seed);
+		byte[] dirs = new byte[1 << 10];
+		byte[] board = new byte[size * size];
+		try (Writer w = new Writer(file, Rules.STANDARD)) {
+			for (int g=0; g<games; g++) {
+				GameBoard.setSeed(seed + g);
+				GameBoard.init(size, size);
+				int n = 0;
+				while (GameBoard.getStatus()) {
+					int dir = moves.nextInt(4);
+					switch (dir) {
+						case BitBoard.UP: GameBoard.shiftUp(); break;
+						case BitBoard.DOWN: GameBoard.shiftDown(); break;
+						case BitBoard.LEFT: GameBoard.shiftLeft(); break;
+						default: GameBoard.shiftRight(); break;
+					}
+					if (n == dirs.length) {
+						dirs = Arrays.copyOf(dirs, 2 * n);
+					}
+					dirs[n++] = (byte) dir;
+					GameBoard.checkGameOver();
+					if (GameBoard.getStatus() && GameBoard.hasMoved()) {
+						GameBoard.addRandomTile();
+						GameBoard.checkGameOver();
+					}
+				}
+				GameBoard.copyExponents(board);
+				long score = GameBoard.getScore();
+				if (tamper > 0 && g % tamper == tamper - 1) {
+					score += 2;
+				}
+				w.add(seed + g, size, size, dirs, n, score, board);
+			}
+		}
+	}
+
+	/**
+	 * @brief Checks a batch from the command line, or writes a random one
+	 * @details Usage: java Verifier <file> [threads], or
+	 * java Verifier -generate <file> <games> [seed] [tamper]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equals("-generate")) {
+			long start = System.nanoTime();
+			int games = Integer.parseInt(args[2]);
+			writeRandomGames(Paths.get(args[1]), games,
+					4, args.length > 3 ? Long.parseLong(args[3]) : 1,
+					args.length > 4 ? Integer.parseInt(args[4]) : 0);
+			System.out.printf("Wrote %,d games in %.1f s%n", games, (System.nanoTime() - start) / 1e9);
+			return;
+		}
+		if (args.length < 1 || args[0].startsWith("-")) {
+			System.err.println("Usage: java Verifier <file> [threads]");
+			System.err.println("       java Verifier -generate <file> <games> [seed] [tamper]");
+			System.exit(1);
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		Verifier v = new Verifier(threads);
+		v.verify(Paths.get(args[0]));
+		v.printResults(20);
+		if (v.rejected.length > 0) {
+			System.exit(2);
+		}
+	}
+}